@@ -3,6 +3,7 @@ package de.eisfeldj.augendiagnosefx;
 import java.io.IOException;
 
 import de.eisfeldj.augendiagnosefx.controller.MainController;
+import de.eisfeldj.augendiagnosefx.fxelements.ImageRenderScheduler;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil.ConfirmDialogListener;
 import de.eisfeldj.augendiagnosefx.util.FxmlConstants;
@@ -12,6 +13,7 @@ import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.VersioningUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageCache;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegSynchronizationUtil;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -41,6 +43,11 @@ public class Application extends javafx.application.Application {
 	 */
 	public static final String APPLICATION_NAME = "Augendiagnose";
 
+	/**
+	 * The maximum time to wait for pending save requests when exiting (in milliseconds).
+	 */
+	private static final long SAVE_TIMEOUT_ON_EXIT = 5000;
+
 	/**
 	 * The primary scene.
 	 */
@@ -56,6 +63,11 @@ public class Application extends javafx.application.Application {
 	 */
 	private static HostServices mHostServices;
 
+	/**
+	 * Flag indicating if the application is waiting for pending save requests in order to exit.
+	 */
+	private static boolean mIsExiting = false;
+
 	/**
 	 * Application method to start the application.
 	 *
@@ -108,14 +120,49 @@ public class Application extends javafx.application.Application {
 	}
 
 	/**
-	 * Exit the application after asking for confirmation if there are unsaved data.
+	 * Exit the application after asking for confirmation if there are unsaved data. Pending save requests are executed
+	 * before, in a background thread, so that the UI stays responsive while waiting for them.
 	 */
 	public static void exitAfterConfirmation() {
-		if (JpegSynchronizationUtil.hasRunningSaveRequests()) {
-			DialogUtil.displayInfo(ResourceConstants.MESSAGE_INFO_SAVING_PHOTO);
+		if (mIsExiting) {
 			return;
 		}
+		mIsExiting = true;
+
+		Thread flushThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final boolean finished = JpegSynchronizationUtil.flushSaveRequests(SAVE_TIMEOUT_ON_EXIT);
+				Logger.info("Saved " + JpegSynchronizationUtil.getWriteCount() + " files, average write time "
+						+ JpegSynchronizationUtil.getAverageWriteTime() + " ms, maximum write time "
+						+ JpegSynchronizationUtil.getMaxWriteTime() + " ms, " + JpegSynchronizationUtil.getQueueSize()
+						+ " files still queued.");
+				Logger.info(ImageCache.getStatistics());
+				Logger.info(ImageRenderScheduler.getStatistics());
+
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						mIsExiting = false;
+						if (finished) {
+							exitIfConfirmed();
+						}
+						else {
+							DialogUtil.displayInfo(ResourceConstants.MESSAGE_INFO_SAVING_PHOTO);
+						}
+					}
+				});
+			}
+		}, "ExitFlush");
+		flushThread.setDaemon(true);
+		flushThread.start();
+	}
 
+	/**
+	 * Exit the application after asking for confirmation if there are unsaved data. To be called after pending save
+	 * requests are finished.
+	 */
+	private static void exitIfConfirmed() {
 		if (MainController.hasDirtyBaseController()) {
 			ConfirmDialogListener listener = new ConfirmDialogListener() {
 				@Override
@@ -1,20 +1,18 @@
 package de.eisfeldj.augendiagnosefx.controller;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FilenameFilter;
+import java.io.IOException;
 import java.net.URL;
-import java.text.CollationKey;
-import java.text.Collator;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.TreeMap;
 
 import de.eisfeldj.augendiagnosefx.fxelements.EyePhotoPairNode;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil;
@@ -26,6 +24,7 @@ import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PersonNameIndex;
 
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
@@ -54,6 +53,11 @@ import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_LAST_NAME;
  * BaseController for the "Display Photos" page.
  */
 public class DisplayPhotosController extends BaseController implements Initializable {
+	/**
+	 * The file suffix of eye photos (case insensitive).
+	 */
+	private static final String JPG_SUFFIX = ".JPG";
+
 	/**
 	 * The previous selected name.
 	 */
@@ -184,6 +188,7 @@ public class DisplayPhotosController extends BaseController implements Initializ
 							}
 						}
 						folder.delete();
+						PersonNameIndex.refresh(name);
 
 						if (name.equals(PreferenceUtil.getPreferenceString(KEY_LAST_NAME))) {
 							PreferenceUtil.removePreference(KEY_LAST_NAME);
@@ -248,6 +253,14 @@ public class DisplayPhotosController extends BaseController implements Initializ
 		Platform.runLater(new Runnable() {
 			@Override
 			public void run() {
+				// Stop loading thumbnails of the previous name.
+				if (mListPhotos.getItems() != null) {
+					for (GridPane row : mListPhotos.getItems()) {
+						if (row instanceof EyePhotoPairNode) {
+							((EyePhotoPairNode) row).cancelThumbnails();
+						}
+					}
+				}
 				mListPhotos.setItems(valuesPhotos);
 				dialog.close();
 			}
@@ -275,77 +288,7 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	 * @return The list of subfolders.
 	 */
 	public static final List<String> getFolderNames(final File parentFolder, final String searchString) {
-		File[] folders = parentFolder.listFiles(new FileFilter() {
-			@Override
-			public boolean accept(final File pathname) {
-				return pathname.isDirectory() && nameStartsWith(pathname.getName(), searchString);
-			}
-		});
-
-		List<String> folderNames = new ArrayList<>();
-		if (folders == null) {
-			return folderNames;
-		}
-
-		Collator collator = Collator.getInstance();
-		final Map<File, CollationKey> collationMap = new HashMap<>();
-		for (File folder : folders) {
-			collationMap.put(folder, collator.getCollationKey(getFilenameForSorting(folder)));
-		}
-
-		Arrays.sort(folders, new Comparator<File>() {
-			@Override
-			public int compare(final File f1, final File f2) {
-				return collationMap.get(f1).compareTo(collationMap.get(f2));
-			}
-		});
-		for (File f : folders) {
-			folderNames.add(f.getName());
-		}
-		return folderNames;
-	}
-
-	/**
-	 * Check if a name part starts with the given String (case insensitive).
-	 *
-	 * @param name
-	 *            The name.
-	 * @param searchString
-	 *            The search string.
-	 * @return True if a name part starts with the given String.
-	 */
-	private static boolean nameStartsWith(final String name, final String searchString) {
-		String[] nameParts = name.toLowerCase().split(" ");
-		String searchStringCaseIndependent = searchString.toLowerCase();
-		for (int i = 0; i < nameParts.length; i++) {
-			if (nameParts[i].startsWith(searchStringCaseIndependent)) {
-				return true;
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * Helper method to return the name of the file for sorting.
-	 *
-	 * @param f
-	 *            The file
-	 * @return The name for Sorting
-	 */
-	private static String getFilenameForSorting(final File f) {
-		String name = f.getName();
-
-		boolean sortByLastName = PreferenceUtil.getPreferenceBoolean(PreferenceUtil.KEY_SORT_BY_LAST_NAME);
-		if (sortByLastName) {
-			int index = name.lastIndexOf(' ');
-			if (index >= 0) {
-				String firstName = name.substring(0, index);
-				String lastName = name.substring(index + 1);
-				name = lastName + " " + firstName;
-			}
-		}
-
-		return name;
+		return PersonNameIndex.getNames(parentFolder, searchString);
 	}
 
 	/**
@@ -356,47 +299,44 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	 * @return The list of eye photo pairs.
 	 */
 	private EyePhotoPair[] createEyePhotoList(final File folder) {
-		Map<Date, EyePhotoPair> eyePhotoMap = new TreeMap<>(new Comparator<Date>() {
-			@Override
-			public int compare(final Date lhs, final Date rhs) {
-				return rhs.compareTo(lhs);
-			}
-		});
-
-		File[] files = folder.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(final File dir, final String name) {
-				return name.toUpperCase().endsWith(".JPG");
-			}
-		});
-
-		if (files == null) {
-			return new EyePhotoPair[0];
-		}
-
-		for (File f : files) {
-			EyePhoto eyePhoto = EyePhoto.fromFile(f);
-
-			if (eyePhoto.isFormatted()) {
-				Date date = eyePhoto.getDate();
+		// Pairs by date in milliseconds. Sorting is done once at the end.
+		Map<Long, EyePhotoPair> eyePhotoMap = new HashMap<>();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder.toPath())) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				if (!name.regionMatches(true, name.length() - JPG_SUFFIX.length(), JPG_SUFFIX, 0, JPG_SUFFIX.length())) {
+					continue;
+				}
+				EyePhoto eyePhoto = EyePhoto.fromFile(path.toFile());
 
-				if (eyePhotoMap.containsKey(date)) {
+				if (eyePhoto.isFormatted()) {
+					Long date = eyePhoto.getDate().getTime();
 					EyePhotoPair eyePhotoPair = eyePhotoMap.get(date);
+					if (eyePhotoPair == null) {
+						eyePhotoPair = new EyePhotoPair();
+						eyePhotoMap.put(date, eyePhotoPair);
+					}
 					eyePhotoPair.setEyePhoto(eyePhoto);
 				}
 				else {
-					EyePhotoPair eyePhotoPair = new EyePhotoPair();
-					eyePhotoPair.setEyePhoto(eyePhoto);
-					eyePhotoMap.put(date, eyePhotoPair);
+					Logger.error("Eye photo is not formatted correctly: " + path.toAbsolutePath());
 				}
 			}
-			else {
-				Logger.error("Eye photo is not formatted correctly: " + f.getAbsolutePath());
-			}
-
+		}
+		catch (IOException e) {
+			Logger.warning("Failed to list folder " + folder.getAbsolutePath() + ": " + e.getMessage());
+			return new EyePhotoPair[0];
 		}
 
-		return eyePhotoMap.values().toArray(new EyePhotoPair[eyePhotoMap.size()]);
+		EyePhotoPair[] eyePhotoPairs = eyePhotoMap.values().toArray(new EyePhotoPair[eyePhotoMap.size()]);
+		Arrays.sort(eyePhotoPairs, new Comparator<EyePhotoPair>() {
+			@Override
+			public int compare(final EyePhotoPair lhs, final EyePhotoPair rhs) {
+				return rhs.getDate().compareTo(lhs.getDate());
+			}
+		});
+		return eyePhotoPairs;
 	}
 
 }
@@ -14,7 +14,9 @@ import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
-import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader.ThumbnailListener;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader.ThumbnailRequest;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -77,6 +79,16 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	@FXML
 	private ImageViewPane mImageViewLeft;
 
+	/**
+	 * The request for the thumbnail of the right eye.
+	 */
+	private ThumbnailRequest mThumbnailRequestRight;
+
+	/**
+	 * The request for the thumbnail of the left eye.
+	 */
+	private ThumbnailRequest mThumbnailRequestLeft;
+
 	@Override
 	public final Parent getRoot() {
 		return this;
@@ -114,6 +126,27 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		if (pair.getLeftEye() != null) {
 			mImageViewLeft.setImageView(getImageView(pair.getLeftEye()));
 		}
+		requestThumbnails(false);
+
+		// The node has a parent while it is displayed in a cell of the list.
+		parentProperty().addListener(new ChangeListener<Parent>() {
+			@Override
+			public void changed(final ObservableValue<? extends Parent> observable, final Parent oldValue,
+					final Parent newValue) {
+				// Evaluate later, so that cells used only temporarily during layout are ignored.
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if (getParent() == null) {
+							cancelThumbnails();
+						}
+						else {
+							requestThumbnails(true);
+						}
+					}
+				});
+			}
+		});
 
 		mLabelDate.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
@@ -179,18 +212,7 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	 * @return The image view.
 	 */
 	private ImageView getImageView(final EyePhoto eyePhoto) {
-		Image image = eyePhoto.getImage(Resolution.THUMB);
-		image.progressProperty().addListener(new ChangeListener<Number>() {
-			@Override
-			public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
-					final Number newValue) {
-				if (newValue.doubleValue() == 1) {
-					checkIfImagesLoaded();
-				}
-			}
-		});
-
-		ImageView imageView = new ImageView(image);
+		ImageView imageView = new ImageView();
 		imageView.setPreserveRatio(true);
 		imageView.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
@@ -232,6 +254,80 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		return imageView;
 	}
 
+	/**
+	 * Request the thumbnails which are not yet loaded or requested.
+	 *
+	 * @param visible
+	 *            flag indicating if the thumbnails are visible.
+	 */
+	private void requestThumbnails(final boolean visible) {
+		mThumbnailRequestRight = requestThumbnail(mPair.getRightEye(), mImageViewRight, mThumbnailRequestRight, visible);
+		mThumbnailRequestLeft = requestThumbnail(mPair.getLeftEye(), mImageViewLeft, mThumbnailRequestLeft, visible);
+	}
+
+	/**
+	 * Request one thumbnail, or raise the priority of an existing request.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param imageViewPane
+	 *            The pane where the thumbnail is displayed.
+	 * @param request
+	 *            The existing request.
+	 * @param visible
+	 *            flag indicating if the thumbnail is visible.
+	 * @return The new or existing request.
+	 */
+	private ThumbnailRequest requestThumbnail(final EyePhoto eyePhoto, final ImageViewPane imageViewPane,
+			final ThumbnailRequest request, final boolean visible) {
+		if (eyePhoto == null) {
+			return null;
+		}
+		if (request != null) {
+			if (visible) {
+				request.setVisible();
+			}
+			return request;
+		}
+		return ThumbnailLoader.requestThumbnail(eyePhoto, visible, new ThumbnailListener() {
+			@Override
+			public void onThumbnailLoaded(final Image image) {
+				if (image == null) {
+					// The photo cannot be read, so it is not displayed.
+					imageViewPane.setImageView(null);
+				}
+				else {
+					imageViewPane.getImageView().setImage(image);
+				}
+				imageViewPane.requestLayout();
+				checkIfImagesLoaded();
+			}
+		});
+	}
+
+	/**
+	 * Cancel the loading of thumbnails, e.g. because the row has been scrolled out of view.
+	 */
+	public final void cancelThumbnails() {
+		mThumbnailRequestRight = cancelThumbnail(mThumbnailRequestRight);
+		mThumbnailRequestLeft = cancelThumbnail(mThumbnailRequestLeft);
+	}
+
+	/**
+	 * Cancel the loading of one thumbnail, if it is not yet loaded.
+	 *
+	 * @param request
+	 *            The request.
+	 * @return The request if it is finished, or null if it has been cancelled.
+	 */
+	private static ThumbnailRequest cancelThumbnail(final ThumbnailRequest request) {
+		if (request == null || request.isFinished()) {
+			return request;
+		}
+		request.cancel();
+		return null;
+	}
+
 	/**
 	 * Check if the images are loaded.
 	 *
@@ -242,14 +338,27 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 			return true;
 		}
 
-		Image imageRight = mImageViewRight.getImageView().getImage();
-		Image imageLeft = mImageViewRight.getImageView().getImage();
-
-		boolean loaded = imageRight.getProgress() == 1 && imageLeft.getProgress() == 1;
+		boolean loaded = isImageLoaded(mImageViewRight) && isImageLoaded(mImageViewLeft);
 		if (loaded) {
 			mImagesLoadedProperty.set(true);
 		}
 		return loaded;
 	}
 
+	/**
+	 * Check if the image of an image view pane is loaded.
+	 *
+	 * @param imageViewPane
+	 *            The image view pane.
+	 * @return true if the pane has no image view or if its image is loaded.
+	 */
+	private static boolean isImageLoaded(final ImageViewPane imageViewPane) {
+		ImageView imageView = imageViewPane.getImageView();
+		if (imageView == null) {
+			return true;
+		}
+		Image image = imageView.getImage();
+		return image != null && image.getProgress() == 1;
+	}
+
 }
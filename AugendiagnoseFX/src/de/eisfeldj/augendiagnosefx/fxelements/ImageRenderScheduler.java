@@ -0,0 +1,363 @@
+package de.eisfeldj.augendiagnosefx.fxelements;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ColorAdjustment;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+
+/**
+ * Scheduler rendering color adjusted frames of an eye photo outside the FX application thread.
+ *
+ * <p>Requests are coalesced: only the latest request is rendered, and frames of outdated requests are discarded. The
+ * adjusted pixels are written into one of two alternating WritableImages, so that the displayed frame is never
+ * changed. The previous frame stays displayed until the new frame is available.
+ */
+public class ImageRenderScheduler {
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The number of nanoseconds per millisecond.
+	 */
+	private static final long NANOS_PER_MILLI = 1000000;
+
+	/**
+	 * The thread rendering the frames.
+	 */
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "ImageRenderer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The listener receiving the rendered frames.
+	 */
+	private final FrameListener mListener;
+
+	/**
+	 * The latest request not yet taken by the render thread.
+	 */
+	private RenderRequest mPendingRequest = null;
+
+	/**
+	 * Flag indicating if the render thread is working on requests of this scheduler.
+	 */
+	private boolean mIsRendering = false;
+
+	/**
+	 * The generation of the latest request. Frames of older generations are discarded.
+	 */
+	private long mGeneration = 0;
+
+	/**
+	 * The two frame buffers.
+	 */
+	private final WritableImage[] mFrameBuffers = new WritableImage[2];
+
+	/**
+	 * The index of the frame buffer to be written next.
+	 */
+	private int mBackBufferIndex = 0;
+
+	/**
+	 * The lock for the statistics of all schedulers.
+	 */
+	private static final Object STATISTICS_LOCK = new Object();
+
+	// JAVADOC:OFF
+	// Statistics of the displayed frames of all schedulers.
+	private static long mFrameCount = 0;
+	private static long mDiscardedFrameCount = 0;
+	private static long mTotalLatency = 0;
+	private static long mMaxLatency = 0;
+
+	// JAVADOC:ON
+
+	/**
+	 * Create a render scheduler.
+	 *
+	 * @param listener
+	 *            The listener receiving the rendered frames in the FX application thread.
+	 */
+	public ImageRenderScheduler(final FrameListener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Request rendering of a frame. Replaces any request that is not yet rendered.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param resolution
+	 *            The resolution of the frame.
+	 * @param brightness
+	 *            The brightness.
+	 * @param contrast
+	 *            The contrast.
+	 * @param saturation
+	 *            The saturation.
+	 * @param colorTemperature
+	 *            The color temperature.
+	 */
+	public final void requestFrame(final EyePhoto eyePhoto, final Resolution resolution, // SUPPRESS_CHECKSTYLE Too many parameters
+			final float brightness, final float contrast, final float saturation, final float colorTemperature) {
+		synchronized (this) {
+			mPendingRequest = new RenderRequest(++mGeneration, eyePhoto, resolution,
+					brightness, contrast, saturation, colorTemperature);
+			if (!mIsRendering) {
+				mIsRendering = true;
+				EXECUTOR.execute(new Runnable() {
+					@Override
+					public void run() {
+						renderPendingRequests();
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Execute a task in the render thread, after the frames and tasks requested before.
+	 *
+	 * @param task
+	 *            The task.
+	 */
+	static void executeInRenderThread(final Runnable task) {
+		EXECUTOR.execute(task);
+	}
+
+	/**
+	 * Discard all requested frames which are not yet displayed.
+	 */
+	public final synchronized void cancel() {
+		mGeneration++;
+		mPendingRequest = null;
+	}
+
+	/**
+	 * Get a summary of the frame statistics of all schedulers: the number of displayed and discarded frames, and the
+	 * average and maximum time from the request of a frame until its display.
+	 *
+	 * @return The statistics as String.
+	 */
+	public static String getStatistics() {
+		synchronized (STATISTICS_LOCK) {
+			long averageLatency = mFrameCount == 0 ? 0 : mTotalLatency / mFrameCount / NANOS_PER_MILLI;
+			return "Image rendering - " + mFrameCount + " frames displayed, " + mDiscardedFrameCount
+					+ " frames discarded, average latency " + averageLatency + " ms, maximum latency "
+					+ mMaxLatency / NANOS_PER_MILLI + " ms";
+		}
+	}
+
+	/**
+	 * Check if a request is outdated by a newer request.
+	 *
+	 * @param request
+	 *            The request.
+	 * @return true if the request is outdated.
+	 */
+	private synchronized boolean isStale(final RenderRequest request) {
+		if (request.mGeneration != mGeneration) {
+			synchronized (STATISTICS_LOCK) {
+				mDiscardedFrameCount++;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Render the pending requests, until there is no more pending request. Executed in the render thread.
+	 */
+	private void renderPendingRequests() {
+		while (true) {
+			RenderRequest request;
+			synchronized (this) {
+				request = mPendingRequest;
+				mPendingRequest = null;
+				if (request == null) {
+					mIsRendering = false;
+					return;
+				}
+			}
+
+			try {
+				render(request);
+			}
+			catch (RuntimeException e) {
+				Logger.error("Failed to render image " + request.mEyePhoto.getFilename(), e);
+			}
+		}
+	}
+
+	/**
+	 * Render a frame, and hand it over to the FX application thread.
+	 *
+	 * @param request
+	 *            The request to be rendered.
+	 */
+	private void render(final RenderRequest request) {
+		final Image baseImage = request.mEyePhoto.loadImage(request.mResolution);
+		if (isStale(request)) {
+			return;
+		}
+
+		final byte[] buffer;
+		if (request.mResolution == Resolution.FULL || request.hasOriginalColors()) {
+			// Full resolution is color adjusted in tiles by OverlayImageView.
+			buffer = null;
+		}
+		else {
+			int width = (int) baseImage.getWidth();
+			int height = (int) baseImage.getHeight();
+			buffer = ColorAdjustment.obtainBuffer(BYTES_PER_PIXEL * width * height);
+			baseImage.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(),
+					buffer, 0, BYTES_PER_PIXEL * width);
+			new ColorAdjustment(request.mBrightness, request.mContrast, request.mSaturation,
+					request.mColorTemperature).apply(buffer, width, height);
+			if (isStale(request)) {
+				ColorAdjustment.releaseBuffer(buffer);
+				return;
+			}
+		}
+
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				displayFrame(request, baseImage, buffer);
+			}
+		});
+	}
+
+	/**
+	 * Display a rendered frame. Executed in the FX application thread.
+	 *
+	 * @param request
+	 *            The rendered request.
+	 * @param baseImage
+	 *            The image without color adjustment.
+	 * @param buffer
+	 *            The color adjusted pixels, or null if the base image is to be displayed.
+	 */
+	private void displayFrame(final RenderRequest request, final Image baseImage, final byte[] buffer) {
+		if (isStale(request)) {
+			if (buffer != null) {
+				ColorAdjustment.releaseBuffer(buffer);
+			}
+			return;
+		}
+
+		Image frame = baseImage;
+		if (buffer != null) {
+			int width = (int) baseImage.getWidth();
+			int height = (int) baseImage.getHeight();
+			WritableImage backBuffer = mFrameBuffers[mBackBufferIndex];
+			if (backBuffer == null || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+				backBuffer = new WritableImage(width, height);
+				mFrameBuffers[mBackBufferIndex] = backBuffer;
+			}
+			WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
+			backBuffer.getPixelWriter().setPixels(0, 0, width, height, pixelFormat, buffer, 0, BYTES_PER_PIXEL * width);
+			ColorAdjustment.releaseBuffer(buffer);
+			mBackBufferIndex = 1 - mBackBufferIndex;
+			frame = backBuffer;
+		}
+
+		mListener.onFrameRendered(frame, request.mResolution);
+
+		long latency = System.nanoTime() - request.mRequestTime;
+		synchronized (STATISTICS_LOCK) {
+			mFrameCount++;
+			mTotalLatency += latency;
+			mMaxLatency = Math.max(mMaxLatency, latency);
+		}
+	}
+
+	/**
+	 * Listener receiving the rendered frames.
+	 */
+	public interface FrameListener {
+		/**
+		 * Callback in the FX application thread when a frame is rendered.
+		 *
+		 * @param frame
+		 *            The color adjusted image, without overlay.
+		 * @param resolution
+		 *            The resolution of the frame.
+		 */
+		void onFrameRendered(Image frame, Resolution resolution);
+	}
+
+	/**
+	 * A request to render a frame.
+	 */
+	private static final class RenderRequest {
+		// JAVADOC:OFF
+		private final long mGeneration;
+		private final long mRequestTime = System.nanoTime();
+		private final EyePhoto mEyePhoto;
+		private final Resolution mResolution;
+		private final float mBrightness;
+		private final float mContrast;
+		private final float mSaturation;
+		private final float mColorTemperature;
+
+		// JAVADOC:ON
+
+		/**
+		 * Create a render request.
+		 *
+		 * @param generation
+		 *            The generation of the request.
+		 * @param eyePhoto
+		 *            The eye photo.
+		 * @param resolution
+		 *            The resolution.
+		 * @param brightness
+		 *            The brightness.
+		 * @param contrast
+		 *            The contrast.
+		 * @param saturation
+		 *            The saturation.
+		 * @param colorTemperature
+		 *            The color temperature.
+		 */
+		private RenderRequest(final long generation, final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+				final Resolution resolution, final float brightness, final float contrast, final float saturation,
+				final float colorTemperature) {
+			mGeneration = generation;
+			mEyePhoto = eyePhoto;
+			mResolution = resolution;
+			mBrightness = brightness;
+			mContrast = contrast;
+			mSaturation = saturation;
+			mColorTemperature = colorTemperature;
+		}
+
+		/**
+		 * Check if the colors of the request are unchanged.
+		 *
+		 * @return true if the colors are unchanged.
+		 */
+		private boolean hasOriginalColors() {
+			return mBrightness == 0 && mContrast == 1 && mSaturation == 1 && mColorTemperature == 0;
+		}
+	}
+}
@@ -68,7 +68,8 @@ public class ImageViewPane extends Region {
 	@Override
 	protected final void layoutChildren() {
 		ImageView imageView = mImageViewProperty.get();
-		if (imageView != null) {
+		// The image may be loaded later.
+		if (imageView != null && imageView.getImage() != null) {
 			imageView.setFitWidth(getWidth());
 			double newHeight = getWidth() * imageView.getImage().getHeight() / imageView.getImage().getWidth();
 			imageView.setFitHeight(newHeight);
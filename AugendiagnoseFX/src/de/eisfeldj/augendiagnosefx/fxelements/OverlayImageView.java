@@ -1,10 +1,12 @@
 package de.eisfeldj.augendiagnosefx.fxelements;
 
+import de.eisfeldj.augendiagnosefx.fxelements.ImageRenderScheduler.FrameListener;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
 
 import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 
 /**
@@ -56,6 +58,30 @@ public class OverlayImageView extends SizableImageView {
 	 */
 	private double mCurrentImageWidth;
 
+	/**
+	 * The layer displaying the color adjusted tiles in full resolution.
+	 */
+	private final TiledImageLayer mTileLayer;
+
+	/**
+	 * The scheduler rendering the image in background.
+	 */
+	private final ImageRenderScheduler mRenderScheduler = new ImageRenderScheduler(new FrameListener() {
+		@Override
+		public void onFrameRendered(final Image frame, final Resolution resolution) {
+			displayFrame(frame, resolution);
+		}
+	});
+
+	/**
+	 * Constructor without initialization of image.
+	 */
+	public OverlayImageView() {
+		super();
+		mTileLayer = new TiledImageLayer(this, getImageView());
+		((Pane) getContent()).getChildren().add(mTileLayer);
+	}
+
 	/**
 	 * Display the overlay.
 	 *
@@ -70,8 +96,7 @@ public class OverlayImageView extends SizableImageView {
 			final Resolution resolution) {
 		mOverlayType = newOverlayType;
 		mOverlayColor = newOverlayColor;
-		mCurrentResolution = resolution;
-		redisplay(mCurrentResolution);
+		redisplay(resolution);
 	}
 
 	/**
@@ -126,14 +151,27 @@ public class OverlayImageView extends SizableImageView {
 	}
 
 	/**
-	 * Redisplay. (Can be used to switch between non-thumbnail and thumbnail view.
+	 * Redisplay. (Can be used to switch between non-thumbnail and thumbnail view.) The image is rendered in
+	 * background, while the current image stays displayed.
 	 *
 	 * @param resolution
 	 *            Indicator of the resolution of the image.
 	 */
 	public final void redisplay(final Resolution resolution) {
-		Image newImage = ImageUtil.getImageForDisplay(getEyePhoto(), mOverlayType, mOverlayColor,
-				mBrightness, mContrast, mSaturation, mColorTemperature, resolution);
+		mRenderScheduler.requestFrame(getEyePhoto(), resolution, mBrightness, mContrast, mSaturation, mColorTemperature);
+	}
+
+	/**
+	 * Display a frame rendered in background, adding the overlay.
+	 *
+	 * @param frame
+	 *            The color adjusted image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 */
+	private void displayFrame(final Image frame, final Resolution resolution) {
+		Image newImage = ImageUtil.getImageForDisplay(getEyePhoto(), frame, mOverlayType, mOverlayColor,
+				0, 1, 1, 0, resolution);
 		if (resolution != mCurrentResolution) {
 			multiplyZoomProperty(mCurrentImageWidth / newImage.getWidth());
 			mCurrentImageWidth = newImage.getWidth();
@@ -141,6 +179,20 @@ public class OverlayImageView extends SizableImageView {
 		}
 
 		getImageView().setImage(newImage);
+		updateTileLayer();
+	}
+
+	/**
+	 * Display the color adjusted tiles in full resolution, as the image view then displays the unchanged image.
+	 */
+	private void updateTileLayer() {
+		boolean hasOriginalColors = mBrightness == 0 && mContrast == 1 && mSaturation == 1 && mColorTemperature == 0;
+		if (mCurrentResolution == Resolution.FULL && !hasOriginalColors) {
+			mTileLayer.display(getImageView().getImage(), mBrightness, mContrast, mSaturation, mColorTemperature);
+		}
+		else {
+			mTileLayer.clear();
+		}
 	}
 
 	/*
@@ -157,6 +209,8 @@ public class OverlayImageView extends SizableImageView {
 				mBrightness, mContrast, mSaturation, mColorTemperature, Resolution.NORMAL);
 		mCurrentResolution = Resolution.NORMAL;
 		mCurrentImageWidth = enhancedImage.getWidth();
+		mRenderScheduler.cancel();
+		mTileLayer.clear();
 
 		super.displayImage(enhancedImage);
 	}
@@ -166,6 +220,8 @@ public class OverlayImageView extends SizableImageView {
 		super.setImage(metadata, image);
 		mCurrentResolution = Resolution.NORMAL;
 		mCurrentImageWidth = image.getWidth();
+		mRenderScheduler.cancel();
+		mTileLayer.clear();
 	}
 
 	/**
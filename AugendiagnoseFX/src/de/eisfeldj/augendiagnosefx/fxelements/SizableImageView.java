@@ -8,6 +8,7 @@ import de.eisfeldj.augendiagnosefx.util.DialogUtil;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil.ProgressDialog;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageCache;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
 
@@ -276,9 +277,9 @@ public class SizableImageView extends ScrollPane {
 		mIsInitialized = false;
 		this.mEyePhoto = eyePhoto;
 
-		Image image = eyePhoto.getImage(Resolution.NORMAL);
-		if (image.getProgress() == 1) {
+		if (ImageCache.contains(eyePhoto.getFile(), Resolution.NORMAL)) {
 			// image is already loaded from the start.
+			final Image image = eyePhoto.getImage(Resolution.NORMAL);
 			Platform.runLater(new Runnable() {
 				@Override
 				public void run() {
@@ -288,27 +289,27 @@ public class SizableImageView extends ScrollPane {
 			return;
 		}
 		else {
-			ProgressDialog dialog = DialogUtil
+			final ProgressDialog dialog = DialogUtil
 					.displayProgressDialog(ResourceConstants.MESSAGE_PROGRESS_LOADING_PHOTO,
 							eyePhoto.getFilename());
+			dialog.setProgress(-1);
 
-			image.progressProperty().addListener(new ChangeListener<Number>() {
+			// Decode the image with subsampling outside the FX application thread.
+			Thread loadingThread = new Thread(new Runnable() {
 				@Override
-				public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
-						final Number newValue) {
-					dialog.setProgress(newValue.doubleValue());
-
-					if (newValue.doubleValue() == 1) {
-						Platform.runLater(new Runnable() {
-							@Override
-							public void run() {
-								displayImage(image);
-								dialog.close();
-							}
-						});
-					}
+				public void run() {
+					final Image image = eyePhoto.loadImage(Resolution.NORMAL);
+					Platform.runLater(new Runnable() {
+						@Override
+						public void run() {
+							displayImage(image);
+							dialog.close();
+						}
+					});
 				}
-			});
+			}, "PhotoLoader");
+			loadingThread.setDaemon(true);
+			loadingThread.start();
 		}
 
 		// Size the image only after this pane is sized
@@ -0,0 +1,389 @@
+package de.eisfeldj.augendiagnosefx.fxelements;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ColorAdjustment;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImagePyramid;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.geometry.Bounds;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import javafx.scene.layout.Pane;
+
+/**
+ * Layer displaying a color adjusted image in tiles above the ImageView of a SizableImageView. Only the tiles
+ * intersecting the visible part of the scroll pane are rendered, so that color adjustment of full resolution images
+ * does not require processing the complete image.
+ *
+ * <p>Tiles are rendered in the render thread of ImageRenderScheduler. If the image is displayed scaled down, then the
+ * tiles are taken from the level of an image pyramid matching the display size, so that the number of tiles and
+ * pixels does not grow with the image size. Until a tile is rendered, the tile previously displayed at its position
+ * stays visible.
+ *
+ * <p>Rendered tiles are cached by position and color settings, so that scrolling back and forth does not render them
+ * again. The cache holds at least twice the number of visible tiles.
+ */
+public class TiledImageLayer extends Pane {
+	/**
+	 * The size of the tiles (in image pixels).
+	 */
+	private static final int TILE_SIZE = 512;
+
+	/**
+	 * The minimum number of cached tiles.
+	 */
+	private static final int MIN_CACHED_TILES = 16;
+
+	/**
+	 * The number of cached tiles per visible tile.
+	 */
+	private static final int CACHED_TILES_PER_VISIBLE_TILE = 2;
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The scroll pane.
+	 */
+	private final ScrollPane mScrollPane;
+
+	/**
+	 * The image view above which the tiles are displayed.
+	 */
+	private final ImageView mImageView;
+
+	/**
+	 * The image from which the tiles are rendered, or null if no tiles are displayed.
+	 */
+	private Image mImage = null;
+
+	/**
+	 * The image pyramid of the image, providing the tiles in reduced size.
+	 */
+	private ImagePyramid mImagePyramid = null;
+
+	/**
+	 * The color settings: brightness, contrast, saturation and color temperature.
+	 */
+	private float[] mColorSettings = null;
+
+	/**
+	 * The maximum number of cached tiles.
+	 */
+	private int mMaxCachedTiles = MIN_CACHED_TILES;
+
+	/**
+	 * The rendered tiles, by image, level, tile position and color settings.
+	 */
+	private final Map<List<Object>, Image> mTileCache = new LinkedHashMap<List<Object>, Image>(2 * MIN_CACHED_TILES,
+			0.75f, true) { // MAGIC_NUMBER
+		/**
+		 * The serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<List<Object>, Image> eldest) {
+			return size() > mMaxCachedTiles;
+		}
+	};
+
+	/**
+	 * The tiles last displayed, by level and tile position.
+	 */
+	private Map<List<Object>, Image> mDisplayedTiles = new HashMap<>();
+
+	/**
+	 * The tiles which are requested from the render thread, but not yet delivered.
+	 */
+	private final Set<List<Object>> mRequestedTiles = new HashSet<>();
+
+	/**
+	 * The tiles which are currently visible. Requests of other tiles are skipped by the render thread.
+	 */
+	private volatile Set<List<Object>> mVisibleTiles = Collections.emptySet();
+
+	/**
+	 * Flag indicating if an update of the tiles is scheduled.
+	 */
+	private boolean mIsUpdateScheduled = false;
+
+	/**
+	 * Create the tile layer.
+	 *
+	 * @param scrollPane
+	 *            The scroll pane.
+	 * @param imageView
+	 *            The image view above which the tiles are displayed.
+	 */
+	public TiledImageLayer(final ScrollPane scrollPane, final ImageView imageView) {
+		mScrollPane = scrollPane;
+		mImageView = imageView;
+		setManaged(false);
+		setMouseTransparent(true);
+		setVisible(false);
+		layoutXProperty().bind(imageView.layoutXProperty());
+		layoutYProperty().bind(imageView.layoutYProperty());
+
+		InvalidationListener listener = new InvalidationListener() {
+			@Override
+			public void invalidated(final Observable observable) {
+				scheduleUpdate();
+			}
+		};
+		scrollPane.hvalueProperty().addListener(listener);
+		scrollPane.vvalueProperty().addListener(listener);
+		scrollPane.widthProperty().addListener(listener);
+		scrollPane.heightProperty().addListener(listener);
+		imageView.fitWidthProperty().addListener(listener);
+		imageView.fitHeightProperty().addListener(listener);
+		imageView.layoutXProperty().addListener(listener);
+		imageView.layoutYProperty().addListener(listener);
+	}
+
+	/**
+	 * Display the tiles of an image with color adjustment.
+	 *
+	 * @param image
+	 *            The image, which has to be the image displayed in the image view.
+	 * @param brightness
+	 *            The brightness.
+	 * @param contrast
+	 *            The contrast.
+	 * @param saturation
+	 *            The saturation.
+	 * @param colorTemperature
+	 *            The color temperature.
+	 */
+	public final void display(final Image image, final float brightness, final float contrast, final float saturation,
+			final float colorTemperature) {
+		if (image != mImage) {
+			mTileCache.clear();
+			mDisplayedTiles.clear();
+			mImagePyramid = new ImagePyramid(image);
+		}
+		mImage = image;
+		mColorSettings = new float[] {brightness, contrast, saturation, colorTemperature};
+		setVisible(true);
+		updateTiles();
+	}
+
+	/**
+	 * Remove the tiles, so that the image view is visible.
+	 */
+	public final void clear() {
+		mImage = null;
+		mImagePyramid = null;
+		mColorSettings = null;
+		mTileCache.clear();
+		mDisplayedTiles.clear();
+		mVisibleTiles = Collections.emptySet();
+		getChildren().clear();
+		setVisible(false);
+	}
+
+	/**
+	 * Schedule an update of the displayed tiles after the current layout pass.
+	 */
+	private void scheduleUpdate() {
+		if (mImage == null || mIsUpdateScheduled) {
+			return;
+		}
+		mIsUpdateScheduled = true;
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				mIsUpdateScheduled = false;
+				updateTiles();
+			}
+		});
+	}
+
+	/**
+	 * Display the tiles intersecting the visible part of the scroll pane. Tiles which are not cached are requested from
+	 * the render thread.
+	 */
+	private void updateTiles() {
+		getChildren().clear();
+		if (mImage == null || mImageView.getImage() != mImage) {
+			return;
+		}
+
+		int imageWidth = (int) mImage.getWidth();
+		int imageHeight = (int) mImage.getHeight();
+		Bounds displayBounds = mImageView.getLayoutBounds();
+		if (displayBounds.getWidth() <= 0 || displayBounds.getHeight() <= 0) {
+			return;
+		}
+		double scale = displayBounds.getWidth() / imageWidth;
+
+		// The tiles are taken from a pyramid level, so that their size is given in image pixels of this level.
+		int levelIndex = mImagePyramid.getLevelIndex(scale);
+		int tileSize = TILE_SIZE << levelIndex;
+
+		// The visible part of the scroll pane in image pixels.
+		Bounds visibleBounds = mImageView.sceneToLocal(mScrollPane.localToScene(mScrollPane.getLayoutBounds()));
+		int minTileX = Math.max(0, (int) (visibleBounds.getMinX() / scale) / tileSize);
+		int maxTileX = Math.min((imageWidth - 1) / tileSize, (int) (visibleBounds.getMaxX() / scale) / tileSize);
+		int minTileY = Math.max(0, (int) (visibleBounds.getMinY() / scale) / tileSize);
+		int maxTileY = Math.min((imageHeight - 1) / tileSize, (int) (visibleBounds.getMaxY() / scale) / tileSize);
+
+		int visibleTileCount = Math.max(0, maxTileX - minTileX + 1) * Math.max(0, maxTileY - minTileY + 1);
+		mMaxCachedTiles = Math.max(MIN_CACHED_TILES, CACHED_TILES_PER_VISIBLE_TILE * visibleTileCount);
+
+		Set<List<Object>> visibleTiles = new HashSet<>();
+		Map<List<Object>, Image> displayedTiles = new HashMap<>();
+		for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+			for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+				int x = tileX * tileSize;
+				int y = tileY * tileSize;
+				int width = Math.min(tileSize, imageWidth - x);
+				int height = Math.min(tileSize, imageHeight - y);
+
+				List<Object> position = Arrays.<Object> asList(levelIndex, tileX, tileY);
+				List<Object> key = Arrays.<Object> asList(mImage, levelIndex, tileX, tileY, mColorSettings[0],
+						mColorSettings[1], mColorSettings[2], mColorSettings[3]); // MAGIC_NUMBER
+				visibleTiles.add(key);
+				Image tile = mTileCache.get(key);
+				if (tile == null) {
+					requestTile(key, levelIndex, x, y, width, height);
+					// Keep the previous tile until the new one is rendered.
+					tile = mDisplayedTiles.get(position);
+					if (tile == null) {
+						continue;
+					}
+				}
+				displayedTiles.put(position, tile);
+
+				// Snap the tile borders to display pixels, so that there are no gaps between tiles.
+				double displayX = Math.floor(x * scale);
+				double displayY = Math.floor(y * scale);
+				ImageView tileView = new ImageView(tile);
+				tileView.setSmooth(mImageView.isSmooth());
+				tileView.setLayoutX(displayX);
+				tileView.setLayoutY(displayY);
+				tileView.setFitWidth(Math.floor((x + width) * scale) - displayX);
+				tileView.setFitHeight(Math.floor((y + height) * scale) - displayY);
+				getChildren().add(tileView);
+			}
+		}
+		mVisibleTiles = visibleTiles;
+		mDisplayedTiles = displayedTiles;
+	}
+
+	/**
+	 * Request rendering of a tile in the render thread, if not yet requested. The tile is rendered only if it is still
+	 * visible when the render thread reaches the request.
+	 *
+	 * @param key
+	 *            The cache key of the tile.
+	 * @param levelIndex
+	 *            The pyramid level from which the tile is taken.
+	 * @param x
+	 *            The x position of the tile in the original image.
+	 * @param y
+	 *            The y position of the tile in the original image.
+	 * @param width
+	 *            The width of the tile in the original image.
+	 * @param height
+	 *            The height of the tile in the original image.
+	 */
+	private void requestTile(final List<Object> key, final int levelIndex, // SUPPRESS_CHECKSTYLE Too many parameters
+			final int x, final int y, final int width, final int height) {
+		if (!mRequestedTiles.add(key)) {
+			return;
+		}
+		final ImagePyramid imagePyramid = mImagePyramid;
+		final float[] colorSettings = mColorSettings;
+
+		ImageRenderScheduler.executeInRenderThread(new Runnable() {
+			@Override
+			public void run() {
+				Image renderedTile = null;
+				try {
+					if (mVisibleTiles.contains(key)) {
+						renderedTile = renderTile(imagePyramid, levelIndex, colorSettings, x, y, width, height);
+					}
+				}
+				catch (RuntimeException e) {
+					Logger.error("Failed to render tile", e);
+				}
+
+				final Image tile = renderedTile;
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						mRequestedTiles.remove(key);
+						if (tile != null && imagePyramid == mImagePyramid) {
+							mTileCache.put(key, tile);
+						}
+						scheduleUpdate();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Render a color adjusted tile of the image from a pyramid level. Executed in the render thread.
+	 *
+	 * @param imagePyramid
+	 *            The image pyramid.
+	 * @param levelIndex
+	 *            The pyramid level from which the tile is taken.
+	 * @param colorSettings
+	 *            The color settings.
+	 * @param x
+	 *            The x position of the tile in the original image.
+	 * @param y
+	 *            The y position of the tile in the original image.
+	 * @param width
+	 *            The width of the tile in the original image.
+	 * @param height
+	 *            The height of the tile in the original image.
+	 * @return The tile.
+	 */
+	private static Image renderTile(final ImagePyramid imagePyramid, // SUPPRESS_CHECKSTYLE Too many parameters
+			final int levelIndex, final float[] colorSettings, final int x, final int y, final int width, final int height) {
+		Image baseImage = imagePyramid.getBaseImage();
+		Image level = imagePyramid.getLevel(levelIndex);
+		double xScale = level.getWidth() / baseImage.getWidth();
+		double yScale = level.getHeight() / baseImage.getHeight();
+		int levelX = (int) Math.floor(x * xScale);
+		int levelY = (int) Math.floor(y * yScale);
+		int levelWidth = Math.max(1, Math.min((int) level.getWidth(), (int) Math.ceil((x + width) * xScale)) - levelX);
+		int levelHeight = Math.max(1, Math.min((int) level.getHeight(), (int) Math.ceil((y + height) * yScale)) - levelY);
+
+		WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
+		byte[] buffer = ColorAdjustment.obtainBuffer(BYTES_PER_PIXEL * levelWidth * levelHeight);
+
+		level.getPixelReader().getPixels(levelX, levelY, levelWidth, levelHeight, pixelFormat, buffer, 0,
+				BYTES_PER_PIXEL * levelWidth);
+		new ColorAdjustment(colorSettings[0], colorSettings[1], colorSettings[2], colorSettings[3]) // MAGIC_NUMBER
+				.apply(buffer, levelWidth, levelHeight);
+		WritableImage tile = new WritableImage(levelWidth, levelHeight);
+		tile.getPixelWriter().setPixels(0, 0, levelWidth, levelHeight, pixelFormat, buffer, 0,
+				BYTES_PER_PIXEL * levelWidth);
+
+		ColorAdjustment.releaseBuffer(buffer);
+		return tile;
+	}
+}
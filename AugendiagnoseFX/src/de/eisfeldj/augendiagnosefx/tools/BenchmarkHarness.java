@@ -0,0 +1,318 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Harness shared by the benchmark tools. Parses the common command line options, runs each benchmark with warm up
+ * iterations followed by measured iterations, prints the statistics of each benchmark as CSV line to stdout and writes
+ * all results to an output file, as JSON if the file name ends with .json, otherwise as CSV.
+ *
+ * <p>Common options: [-warmup n] [-iterations n] [-output file.csv|file.json]. All other arguments are left to the
+ * tool.
+ */
+final class BenchmarkHarness {
+	/**
+	 * The CSV header.
+	 */
+	private static final String CSV_HEADER = "benchmark,input,samples,mean_ms,stddev_ms,min_ms,median_ms,max_ms";
+
+	/**
+	 * The number of nanoseconds per millisecond.
+	 */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/**
+	 * The number of warm up iterations.
+	 */
+	private final int mWarmup;
+
+	/**
+	 * The number of measured iterations.
+	 */
+	private final int mIterations;
+
+	/**
+	 * The output file, or null for output to stdout only.
+	 */
+	private final File mOutputFile;
+
+	/**
+	 * The arguments which are not common options.
+	 */
+	private final List<String> mArguments = new ArrayList<>();
+
+	/**
+	 * The results.
+	 */
+	private final List<Result> mResults = new ArrayList<>();
+
+	/**
+	 * Create a harness from the command line arguments.
+	 *
+	 * @param args
+	 *            The command line arguments.
+	 * @param defaultWarmup
+	 *            The number of warm up iterations if not given as argument.
+	 * @param defaultIterations
+	 *            The number of measured iterations if not given as argument.
+	 */
+	BenchmarkHarness(final String[] args, final int defaultWarmup, final int defaultIterations) {
+		int warmup = defaultWarmup;
+		int iterations = defaultIterations;
+		File outputFile = null;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-warmup":
+				warmup = Integer.parseInt(args[++i]);
+				break;
+			case "-iterations":
+				iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-output":
+				outputFile = new File(args[++i]);
+				break;
+			default:
+				mArguments.add(args[i]);
+			}
+		}
+		mWarmup = warmup;
+		mIterations = iterations;
+		mOutputFile = outputFile;
+	}
+
+	public int getWarmup() {
+		return mWarmup;
+	}
+
+	public int getIterations() {
+		return mIterations;
+	}
+
+	public List<String> getArguments() {
+		return mArguments;
+	}
+
+	/**
+	 * Print the settings and the CSV header to stdout.
+	 *
+	 * @param description
+	 *            A description of the input.
+	 */
+	public void printHeader(final String description) {
+		System.out.println(String.format(Locale.ENGLISH, "%s, %d warm up and %d measured iterations", description,
+				mWarmup, mIterations));
+		System.out.println(CSV_HEADER);
+	}
+
+	/**
+	 * Check if an iteration is measured, i.e. not a warm up iteration.
+	 *
+	 * @param iteration
+	 *            The number of the iteration, starting with 0.
+	 * @return true if the iteration is measured.
+	 */
+	public boolean isMeasured(final int iteration) {
+		return iteration >= mWarmup;
+	}
+
+	/**
+	 * Run a benchmark and report its result.
+	 *
+	 * @param name
+	 *            The name of the benchmark.
+	 * @param input
+	 *            The name of the input.
+	 * @param task
+	 *            The task to be measured.
+	 * @return The result.
+	 * @throws Exception
+	 *             thrown if the task fails.
+	 */
+	public Result run(final String name, final String input, final Task task) throws Exception {
+		Result result = new Result(name, input);
+		for (int iteration = 0; iteration < mWarmup + mIterations; iteration++) {
+			long startTime = System.nanoTime();
+			task.run();
+			result.add(System.nanoTime() - startTime, isMeasured(iteration));
+		}
+		report(result);
+		return result;
+	}
+
+	/**
+	 * Store a result and print it to stdout. Used directly for benchmarks which measure themselves.
+	 *
+	 * @param result
+	 *            The result.
+	 */
+	public void report(final Result result) {
+		mResults.add(result);
+		System.out.println(result.toCsv());
+	}
+
+	/**
+	 * Write the results to the output file, if given.
+	 *
+	 * @throws IOException
+	 *             thrown if the file cannot be written.
+	 */
+	public void writeResults() throws IOException {
+		if (mOutputFile == null) {
+			return;
+		}
+		boolean isJson = mOutputFile.getName().toLowerCase(Locale.ENGLISH).endsWith(".json");
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(mOutputFile.toPath(), StandardCharsets.UTF_8))) {
+			if (isJson) {
+				writer.println("[");
+				for (int i = 0; i < mResults.size(); i++) {
+					writer.println(mResults.get(i).toJson() + (i < mResults.size() - 1 ? "," : ""));
+				}
+				writer.println("]");
+			}
+			else {
+				writer.println(CSV_HEADER);
+				for (Result result : mResults) {
+					writer.println(result.toCsv());
+				}
+			}
+		}
+		System.out.println("Results written to " + mOutputFile.getAbsolutePath());
+	}
+
+	/**
+	 * A task to be measured.
+	 */
+	interface Task {
+		/**
+		 * Run the task.
+		 *
+		 * @throws Exception
+		 *             thrown if the task fails.
+		 */
+		void run() throws Exception;
+	}
+
+	/**
+	 * The measured durations of a benchmark on one input.
+	 */
+	static final class Result {
+		/**
+		 * The name of the benchmark.
+		 */
+		private final String mName;
+
+		/**
+		 * The name of the input.
+		 */
+		private final String mInput;
+
+		/**
+		 * The measured durations in nanoseconds.
+		 */
+		private final List<Long> mSamples = new ArrayList<>();
+
+		/**
+		 * Create a result.
+		 *
+		 * @param name
+		 *            The name of the benchmark.
+		 * @param input
+		 *            The name of the input.
+		 */
+		Result(final String name, final String input) {
+			mName = name;
+			mInput = input;
+		}
+
+		/**
+		 * Add a duration.
+		 *
+		 * @param nanos
+		 *            The duration in nanoseconds.
+		 * @param isMeasured
+		 *            flag indicating if the duration is measured (otherwise it is from warm up and ignored).
+		 */
+		void add(final long nanos, final boolean isMeasured) {
+			if (isMeasured) {
+				mSamples.add(nanos);
+			}
+		}
+
+		/**
+		 * Check if the result has measured durations.
+		 *
+		 * @return true if there are no measured durations.
+		 */
+		boolean isEmpty() {
+			return mSamples.isEmpty();
+		}
+
+		/**
+		 * Get the median of the durations.
+		 *
+		 * @return The median in milliseconds.
+		 */
+		double getMedian() {
+			return getStatistics()[3]; // MAGIC_NUMBER
+		}
+
+		/**
+		 * Get the statistics of the durations.
+		 *
+		 * @return Mean, standard deviation, minimum, median and maximum in milliseconds.
+		 */
+		private double[] getStatistics() {
+			List<Long> sorted = new ArrayList<>(mSamples);
+			Collections.sort(sorted);
+			int count = sorted.size();
+
+			double sum = 0;
+			for (long sample : sorted) {
+				sum += sample;
+			}
+			double mean = sum / count;
+			double squareSum = 0;
+			for (long sample : sorted) {
+				squareSum += (sample - mean) * (sample - mean);
+			}
+			double stddev = count > 1 ? Math.sqrt(squareSum / (count - 1)) : 0;
+			double median = count % 2 == 1 ? sorted.get(count / 2) : (sorted.get(count / 2 - 1) + sorted.get(count / 2)) / 2.0;
+
+			return new double[] {mean / NANOS_PER_MILLI, stddev / NANOS_PER_MILLI, sorted.get(0) / NANOS_PER_MILLI,
+					median / NANOS_PER_MILLI, sorted.get(count - 1) / NANOS_PER_MILLI};
+		}
+
+		/**
+		 * Format the result as CSV line.
+		 *
+		 * @return The CSV line.
+		 */
+		private String toCsv() {
+			double[] statistics = getStatistics();
+			return String.format(Locale.ENGLISH, "%s,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f", mName, mInput.replace(',', '_'),
+					mSamples.size(), statistics[0], statistics[1], statistics[2], statistics[3], statistics[4]); // MAGIC_NUMBER
+		}
+
+		/**
+		 * Format the result as JSON object.
+		 *
+		 * @return The JSON object.
+		 */
+		private String toJson() {
+			double[] statistics = getStatistics();
+			return String.format(Locale.ENGLISH,
+					"  {\"benchmark\": \"%s\", \"input\": \"%s\", \"samples\": %d, \"unit\": \"ms\", \"mean\": %.3f, "
+							+ "\"stddev\": %.3f, \"min\": %.3f, \"median\": %.3f, \"max\": %.3f}",
+					mName, mInput.replace("\\", "\\\\").replace("\"", "\\\""), mSamples.size(), statistics[0], statistics[1],
+					statistics[2], statistics[3], statistics[4]); // MAGIC_NUMBER
+		}
+	}
+}
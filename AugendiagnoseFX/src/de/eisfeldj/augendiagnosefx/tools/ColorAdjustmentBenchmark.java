@@ -0,0 +1,212 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Result;
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Task;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ColorAdjustment;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Tool to measure the throughput of the color adjustment (brightness, contrast, saturation, color temperature) for
+ * images of NORMAL and FULL resolution. Compares ColorAdjustment with the former calculation per pixel, and verifies
+ * that both give identical results.
+ *
+ * <p>Usage: ColorAdjustmentBenchmark [-warmup n] [-iterations n] [-output file.csv|file.json].
+ */
+public final class ColorAdjustmentBenchmark {
+	/**
+	 * The default number of warm up iterations per measurement.
+	 */
+	private static final int DEFAULT_WARMUP = 2;
+
+	/**
+	 * The default number of measured iterations per measurement.
+	 */
+	private static final int DEFAULT_ITERATIONS = 10;
+
+	/**
+	 * The width of the FULL resolution test image (12 megapixels, 4:3).
+	 */
+	private static final int FULL_WIDTH = 4000;
+
+	/**
+	 * The height of the FULL resolution test image.
+	 */
+	private static final int FULL_HEIGHT = 3000;
+
+	/**
+	 * The tested parameter sets: brightness, contrast, saturation, color temperature.
+	 */
+	private static final float[][] PARAMETERS = {
+			{0.1f, 1.2f, 1f, 0.3f},
+			{-0.2f, 0.8f, 1.5f, -0.4f}
+	};
+
+	/**
+	 * The number of milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000.0;
+
+	/**
+	 * The number of pixels per megapixel.
+	 */
+	private static final double PIXELS_PER_MEGAPIXEL = 1000000.0;
+
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int FOUR = 4;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ColorAdjustmentBenchmark() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments.
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	public static void main(final String[] args) throws Exception {
+		BenchmarkHarness harness = new BenchmarkHarness(args, DEFAULT_WARMUP, DEFAULT_ITERATIONS);
+		int normalSize = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
+
+		harness.printHeader("Color adjustment on " + Runtime.getRuntime().availableProcessors() + " threads");
+		measure(harness, "NORMAL", normalSize, normalSize * FULL_HEIGHT / FULL_WIDTH);
+		measure(harness, "FULL", FULL_WIDTH, FULL_HEIGHT);
+		harness.writeResults();
+	}
+
+	/**
+	 * Measure the throughput for one image size.
+	 *
+	 * @param harness
+	 *            The benchmark harness.
+	 * @param name
+	 *            The name of the resolution.
+	 * @param width
+	 *            The image width.
+	 * @param height
+	 *            The image height.
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	private static void measure(final BenchmarkHarness harness, final String name, final int width, final int height)
+			throws Exception {
+		final byte[] original = createTestPixels(width, height);
+		final byte[] buffer = new byte[original.length];
+		double megapixels = width * height / PIXELS_PER_MEGAPIXEL;
+
+		for (final float[] p : PARAMETERS) {
+			System.arraycopy(original, 0, buffer, 0, original.length);
+			adjustPerPixel(buffer, p[0], p[1], p[2], p[3]);
+			byte[] expected = buffer.clone();
+			System.arraycopy(original, 0, buffer, 0, original.length);
+			new ColorAdjustment(p[0], p[1], p[2], p[3]).apply(buffer, width, height);
+			boolean isExact = Arrays.equals(expected, buffer);
+
+			String input = String.format(Locale.ENGLISH, "%s %dx%d saturation %.1f", name, width, height, p[2]);
+			Result perPixel = harness.run("colorAdjustment.perPixel", input, new Task() {
+				@Override
+				public void run() {
+					System.arraycopy(original, 0, buffer, 0, original.length);
+					adjustPerPixel(buffer, p[0], p[1], p[2], p[3]);
+				}
+			});
+			Result tables = harness.run("colorAdjustment.tables", input, new Task() {
+				@Override
+				public void run() {
+					System.arraycopy(original, 0, buffer, 0, original.length);
+					new ColorAdjustment(p[0], p[1], p[2], p[3]).apply(buffer, width, height);
+				}
+			});
+
+			System.out.println(String.format(Locale.ENGLISH, "%s: per pixel %.1f MP/s, tables %.1f MP/s, %s", input,
+					megapixels * MILLIS_PER_SECOND / perPixel.getMedian(),
+					megapixels * MILLIS_PER_SECOND / tables.getMedian(), isExact ? "identical" : "DIFFERENT"));
+		}
+	}
+
+	/**
+	 * Create random opaque BGRA pixels.
+	 *
+	 * @param width
+	 *            The image width.
+	 * @param height
+	 *            The image height.
+	 * @return The pixels.
+	 */
+	private static byte[] createTestPixels(final int width, final int height) {
+		byte[] pixels = new byte[FOUR * width * height];
+		new Random(0).nextBytes(pixels);
+		for (int i = FOUR - 1; i < pixels.length; i += FOUR) {
+			pixels[i] = (byte) BYTE;
+		}
+		return pixels;
+	}
+
+	/**
+	 * Adjust the colors per pixel, as formerly done in ImageUtil.getImageWithOverlay.
+	 *
+	 * @param buffer
+	 *            The BGRA pixels.
+	 * @param brightness
+	 *            The brightness.
+	 * @param contrast
+	 *            The contrast.
+	 * @param saturation
+	 *            The saturation.
+	 * @param colorTemperature
+	 *            The color temperature.
+	 */
+	private static void adjustPerPixel(final byte[] buffer, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature) {
+		double temperature = colorTemperature;
+		Color temperatureColor = temperature >= 0
+				? Color.rgb((int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE) // MAGIC_NUMBER
+				: Color.rgb(BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)); // MAGIC_NUMBER
+		float factorBlue = 1 / (float) temperatureColor.getBlue();
+		float factorGreen = 1 / (float) temperatureColor.getGreen();
+		float factorRed = 1 / (float) temperatureColor.getRed();
+		float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
+		factorBlue *= correctionFactor * contrast;
+		factorGreen *= correctionFactor * contrast;
+		factorRed *= correctionFactor * contrast;
+		float offset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
+		float oppositeSaturation = (1 - saturation) / 2;
+
+		for (int i = 0; i < buffer.length; i += FOUR) {
+			float blueIn = (buffer[i] & BYTE) * factorBlue;
+			float greenIn = (buffer[i + 1] & BYTE) * factorGreen;
+			float redIn = (buffer[i + 2] & BYTE) * factorRed;
+
+			buffer[i] = toColorByte(saturation * blueIn + oppositeSaturation * greenIn + oppositeSaturation * redIn + offset);
+			buffer[i + 1] = toColorByte(oppositeSaturation * blueIn + saturation * greenIn + oppositeSaturation * redIn + offset);
+			buffer[i + 2] = toColorByte(oppositeSaturation * blueIn + oppositeSaturation * greenIn + saturation * redIn + offset);
+		}
+	}
+
+	/**
+	 * Convert a number into a byte (ensuring the appropriate range).
+	 *
+	 * @param number The number.
+	 * @return The resulting byte.
+	 */
+	private static byte toColorByte(final float number) {
+		return (byte) Math.min(BYTE, Math.max(0, number));
+	}
+}
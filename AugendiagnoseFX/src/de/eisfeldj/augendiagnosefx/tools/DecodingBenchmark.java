@@ -0,0 +1,274 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Result;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageDecoder;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+
+import javafx.scene.image.Image;
+
+/**
+ * Tool to measure decoding time and peak heap of image decoding. Compares the decoding of the complete image followed
+ * by scaling (as formerly required for thumbnails and normal resolution) with the subsampled decoding of ImageDecoder.
+ *
+ * <p>Usage: DecodingBenchmark [-warmup n] [-iterations n] [-output file.csv|file.json] [image files]. Without image
+ * files, generated JPEG files of 12 and 24 megapixels are used.
+ */
+public final class DecodingBenchmark {
+	/**
+	 * The default number of warm up iterations per measurement.
+	 */
+	private static final int DEFAULT_WARMUP = 1;
+
+	/**
+	 * The default number of measured iterations per measurement.
+	 */
+	private static final int DEFAULT_ITERATIONS = 5;
+
+	/**
+	 * The sizes of the generated test images (12 and 24 megapixels, 4:3 and 3:2).
+	 */
+	private static final int[][] TEST_IMAGE_SIZES = {{4000, 3000}, {6000, 4000}};
+
+	/**
+	 * The number of bytes per megabyte.
+	 */
+	private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private DecodingBenchmark() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments.
+	 * @throws IOException
+	 *             thrown if an image cannot be decoded.
+	 */
+	public static void main(final String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		BenchmarkHarness harness = new BenchmarkHarness(args, DEFAULT_WARMUP, DEFAULT_ITERATIONS);
+
+		List<File> files = new ArrayList<>();
+		List<File> tempFiles = new ArrayList<>();
+		for (String arg : harness.getArguments()) {
+			files.add(new File(arg));
+		}
+		if (files.isEmpty()) {
+			for (int[] size : TEST_IMAGE_SIZES) {
+				File file = createTestFile(size[0], size[1]);
+				files.add(file);
+				tempFiles.add(file);
+			}
+		}
+
+		int thumbnailSize = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE);
+		int normalSize = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
+
+		try {
+			harness.printHeader(files.size() + " files");
+			for (final File file : files) {
+				final int[] imageSize = getImageSize(file);
+				System.out.println(String.format(Locale.ENGLISH, "File %s: %dx%d (%.1f MP, %.1f MB)",
+						file.getName(), imageSize[0], imageSize[1], imageSize[0] * imageSize[1] / 1000000.0, // MAGIC_NUMBER
+						file.length() / BYTES_PER_MEGABYTE));
+
+				for (final int size : new int[] {thumbnailSize, normalSize}) {
+					measure(harness, "decode.complete." + size, file.getName(), new Decoding() {
+						@Override
+						public Image decode() throws IOException {
+							return ImageUtil.scaleImage(ImageUtil.decodeImage(file), size);
+						}
+					});
+					measure(harness, "decode.subsampled." + size, file.getName(), new Decoding() {
+						@Override
+						public Image decode() throws IOException {
+							return ImageDecoder.decodeImage(file, size);
+						}
+					});
+				}
+
+				measure(harness, "decode.full", file.getName(), new Decoding() {
+					@Override
+					public Image decode() throws IOException {
+						return ImageUtil.decodeImage(file);
+					}
+				});
+			}
+			harness.writeResults();
+		}
+		finally {
+			for (File file : tempFiles) {
+				if (!file.delete()) {
+					System.err.println("Failed to delete " + file.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the size of an image file after applying the EXIF rotation, without decoding the pixels.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @return The width and the height.
+	 * @throws IOException
+	 *             thrown if the file cannot be read.
+	 */
+	private static int[] getImageSize(final File file) throws IOException {
+		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException("Cannot decode image file " + file.getAbsolutePath());
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				if (rotation == 90 || rotation == 270) { // MAGIC_NUMBER
+					return new int[] {reader.getHeight(0), reader.getWidth(0)};
+				}
+				else {
+					return new int[] {reader.getWidth(0), reader.getHeight(0)};
+				}
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Measure the duration and the peak heap of a decoding. The garbage collection before each iteration is not
+	 * measured, so that the harness loop cannot be used.
+	 *
+	 * @param harness
+	 *            The benchmark harness.
+	 * @param name
+	 *            The name of the benchmark.
+	 * @param input
+	 *            The name of the input.
+	 * @param decoding
+	 *            The decoding.
+	 * @throws IOException
+	 *             thrown if the image cannot be decoded.
+	 */
+	private static void measure(final BenchmarkHarness harness, final String name, final String input,
+			final Decoding decoding) throws IOException {
+		Result result = new Result(name, input);
+		long peakBytes = 0;
+		Image image = null;
+		for (int iteration = 0; iteration < harness.getWarmup() + harness.getIterations(); iteration++) {
+			image = null; // SUPPRESS_CHECKSTYLE Allow garbage collection of previous result
+			System.gc();
+			long baseBytes = resetPeakHeap();
+			long startTime = System.nanoTime();
+			image = decoding.decode();
+			result.add(System.nanoTime() - startTime, harness.isMeasured(iteration));
+			if (harness.isMeasured(iteration)) {
+				peakBytes = Math.max(peakBytes, getPeakHeap() - baseBytes);
+			}
+		}
+
+		harness.report(result);
+		System.out.println(String.format(Locale.ENGLISH, "  %s: peak heap %.1f MB, result %.0fx%.0f", name,
+				peakBytes / BYTES_PER_MEGABYTE, image.getWidth(), image.getHeight()));
+	}
+
+	/**
+	 * Reset the peak usage of the heap memory pools.
+	 *
+	 * @return The current heap usage.
+	 */
+	private static long resetPeakHeap() {
+		long usedBytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				usedBytes += pool.getUsage().getUsed();
+			}
+		}
+		return usedBytes;
+	}
+
+	/**
+	 * Get the peak heap usage since the last reset, as sum of the peak usages of the heap memory pools. As the pools do
+	 * not necessarily reach their peaks at the same time, this is an upper bound.
+	 *
+	 * @return The peak heap usage.
+	 */
+	private static long getPeakHeap() {
+		long peakBytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peakBytes;
+	}
+
+	/**
+	 * Create a JPEG file with a photo like test image (smooth gradients with noise).
+	 *
+	 * @param width
+	 *            The width of the image.
+	 * @param height
+	 *            The height of the image.
+	 * @return The file.
+	 * @throws IOException
+	 *             thrown if the file cannot be written.
+	 */
+	private static File createTestFile(final int width, final int height) throws IOException {
+		Random random = new Random(0);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int red = (x * 255 / width + random.nextInt(16)) & 0xFF; // MAGIC_NUMBER
+				int green = (y * 255 / height + random.nextInt(16)) & 0xFF; // MAGIC_NUMBER
+				int blue = ((x + y) * 127 / (width + height) + random.nextInt(16)) & 0xFF; // MAGIC_NUMBER
+				row[x] = red << 16 | green << 8 | blue; // MAGIC_NUMBER
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+
+		File file = File.createTempFile("benchmark_" + width + "x" + height + "_", ".jpg");
+		ImageIO.write(image, "jpg", file);
+		return file;
+	}
+
+	/**
+	 * A decoding to be measured.
+	 */
+	private interface Decoding {
+		/**
+		 * Decode the image.
+		 *
+		 * @return The image.
+		 * @throws IOException
+		 *             thrown if the image cannot be decoded.
+		 */
+		Image decode() throws IOException;
+	}
+}
@@ -0,0 +1,184 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Locale;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector;
+
+import javafx.scene.image.Image;
+
+/**
+ * Tool to compare the results of pupil and iris detection with fast statistics against the exact statistics, based
+ * on a folder of sample eye photos.
+ *
+ * <p>Usage: DetectionAccuracyComparison folder [tolerance]. All deviations are relative to the image size.
+ */
+public final class DetectionAccuracyComparison {
+	/**
+	 * The default tolerance for deviations that are counted as mismatch.
+	 */
+	private static final double DEFAULT_TOLERANCE = 0.01;
+
+	/**
+	 * The number of nanoseconds per millisecond.
+	 */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/**
+	 * The number of compared values (pupil center, pupil radius, iris center, iris radius).
+	 */
+	private static final int VALUE_COUNT = 4;
+
+	/**
+	 * The names of the compared values.
+	 */
+	private static final String[] VALUE_NAMES = {"pupil center", "pupil radius", "iris center", "iris radius"};
+
+	/**
+	 * The sum of deviations per value.
+	 */
+	private double[] mDeviationSums = new double[VALUE_COUNT];
+
+	/**
+	 * The maximum deviation per value.
+	 */
+	private double[] mMaxDeviations = new double[VALUE_COUNT];
+
+	/**
+	 * The number of images with a deviation above the tolerance.
+	 */
+	private int mMismatchCount = 0;
+
+	/**
+	 * The number of compared images.
+	 */
+	private int mImageCount = 0;
+
+	/**
+	 * The total duration of exact detection (in nanoseconds).
+	 */
+	private long mExactDuration = 0;
+
+	/**
+	 * The total duration of fast detection (in nanoseconds).
+	 */
+	private long mFastDuration = 0;
+
+	/**
+	 * The tolerance for deviations.
+	 */
+	private double mTolerance;
+
+	/**
+	 * Create the comparison.
+	 *
+	 * @param tolerance
+	 *            The tolerance for deviations.
+	 */
+	private DetectionAccuracyComparison(final double tolerance) {
+		mTolerance = tolerance;
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments: the folder of sample images and optionally the tolerance.
+	 */
+	public static void main(final String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 1) {
+			System.err.println("Usage: DetectionAccuracyComparison folder [tolerance]");
+			System.exit(1);
+		}
+
+		File[] files = new File(args[0]).listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File file) {
+				return file.isFile() && file.getName().toUpperCase().endsWith(".JPG");
+			}
+		});
+		if (files == null) {
+			System.err.println("Folder " + args[0] + " does not exist.");
+			System.exit(1);
+		}
+
+		DetectionAccuracyComparison comparison =
+				new DetectionAccuracyComparison(args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_TOLERANCE);
+		for (File file : files) {
+			try {
+				comparison.compare(file);
+			}
+			catch (IOException e) {
+				System.err.println("Failed to read " + file.getAbsolutePath() + ": " + e);
+			}
+		}
+		comparison.printSummary();
+	}
+
+	/**
+	 * Compare fast and exact detection for one image.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @throws IOException
+	 *             thrown if the image cannot be decoded.
+	 */
+	private void compare(final File file) throws IOException {
+		Image image = ImageUtil.decodeImage(file);
+
+		long startTime = System.nanoTime();
+		PupilAndIrisDetector exactDetector = new PupilAndIrisDetector(image, 1, false);
+		long exactDuration = System.nanoTime() - startTime;
+
+		startTime = System.nanoTime();
+		PupilAndIrisDetector fastDetector = new PupilAndIrisDetector(image, 1, true);
+		long fastDuration = System.nanoTime() - startTime;
+
+		double[] deviations = {
+				Math.hypot(exactDetector.getPupilXCenter() - fastDetector.getPupilXCenter(),
+						exactDetector.getPupilYCenter() - fastDetector.getPupilYCenter()),
+				Math.abs(exactDetector.getPupilRadius() - fastDetector.getPupilRadius()),
+				Math.hypot(exactDetector.getIrisXCenter() - fastDetector.getIrisXCenter(),
+						exactDetector.getIrisYCenter() - fastDetector.getIrisYCenter()),
+				Math.abs(exactDetector.getIrisRadius() - fastDetector.getIrisRadius())};
+
+		boolean isMismatch = false;
+		for (int i = 0; i < VALUE_COUNT; i++) {
+			mDeviationSums[i] += deviations[i];
+			mMaxDeviations[i] = Math.max(mMaxDeviations[i], deviations[i]);
+			isMismatch = isMismatch || deviations[i] > mTolerance;
+		}
+		if (isMismatch) {
+			mMismatchCount++;
+		}
+		mImageCount++;
+		mExactDuration += exactDuration;
+		mFastDuration += fastDuration;
+
+		System.out.println(String.format(Locale.ENGLISH, "%s: exact %.0f ms, fast %.0f ms, deviations %.4f %.4f %.4f %.4f%s",
+				file.getName(), exactDuration / NANOS_PER_MILLI, fastDuration / NANOS_PER_MILLI,
+				deviations[0], deviations[1], deviations[2], deviations[3], isMismatch ? " MISMATCH" : ""));
+	}
+
+	/**
+	 * Print the summary of all comparisons.
+	 */
+	private void printSummary() {
+		if (mImageCount == 0) {
+			System.out.println("No images found.");
+			return;
+		}
+		System.out.println(String.format(Locale.ENGLISH, "Compared %d images, %d above tolerance %.4f", mImageCount,
+				mMismatchCount, mTolerance));
+		for (int i = 0; i < VALUE_COUNT; i++) {
+			System.out.println(String.format(Locale.ENGLISH, "%s: mean deviation %.4f, max deviation %.4f", VALUE_NAMES[i],
+					mDeviationSums[i] / mImageCount, mMaxDeviations[i]));
+		}
+		System.out.println(String.format(Locale.ENGLISH, "Average duration: exact %.0f ms, fast %.0f ms",
+				mExactDuration / NANOS_PER_MILLI / mImageCount, mFastDuration / NANOS_PER_MILLI / mImageCount));
+	}
+}
@@ -0,0 +1,219 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector;
+
+/**
+ * Tool to determine the pupil and iris position of all eye photos in the eye photo folder and to store it in the
+ * metadata. Runs without JavaFX stage, so that it can be scheduled on a server.
+ *
+ * <p>Usage: IrisDetectionBatch [folder [threads]]. By default, the eye photo folder from the preferences is used, with
+ * one thread per processor.
+ */
+public final class IrisDetectionBatch {
+	/**
+	 * The number of queued photos per worker thread.
+	 */
+	private static final int QUEUE_SIZE_PER_THREAD = 2;
+
+	/**
+	 * The number of processed photos after which the progress is reported.
+	 */
+	private static final int PROGRESS_INTERVAL = 10;
+
+	/**
+	 * The number of milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000.0;
+
+	/**
+	 * The number of photos to be processed.
+	 */
+	private int mTotalCount;
+
+	/**
+	 * The number of processed photos (including skipped and failed ones).
+	 */
+	private final AtomicInteger mProcessedCount = new AtomicInteger();
+
+	/**
+	 * The number of photos for which the position was stored.
+	 */
+	private final AtomicInteger mDetectedCount = new AtomicInteger();
+
+	/**
+	 * The number of photos that were skipped because they already have a position.
+	 */
+	private final AtomicInteger mSkippedCount = new AtomicInteger();
+
+	/**
+	 * The number of photos for which detection failed.
+	 */
+	private final AtomicInteger mFailedCount = new AtomicInteger();
+
+	/**
+	 * The start time of the processing.
+	 */
+	private long mStartTime;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private IrisDetectionBatch() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments: the folder and the number of threads (both optional).
+	 * @throws InterruptedException
+	 *             thrown if interrupted while waiting for the workers.
+	 */
+	public static void main(final String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+
+		File folder = new File(args.length > 0 ? args[0] : PreferenceUtil.getPreferenceString(PreferenceUtil.KEY_FOLDER_PHOTOS));
+		int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		if (!folder.isDirectory()) {
+			System.err.println("Folder " + folder.getAbsolutePath() + " does not exist.");
+			System.exit(1);
+		}
+		if (!JpegMetadataUtil.changeJpegAllowed()) {
+			System.err.println("Storing metadata in JPEG files is disabled in the preferences.");
+			System.exit(1);
+		}
+
+		new IrisDetectionBatch().processFolder(folder, threadCount);
+	}
+
+	/**
+	 * Process all JPEG files in a folder and its subfolders.
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @param threadCount
+	 *            The number of worker threads.
+	 * @throws InterruptedException
+	 *             thrown if interrupted while waiting for the workers.
+	 */
+	private void processFolder(final File folder, final int threadCount) throws InterruptedException {
+		List<File> files = new ArrayList<>();
+		collectJpegFiles(folder, files);
+		mTotalCount = files.size();
+		System.out.println("Found " + mTotalCount + " photos in " + folder.getAbsolutePath());
+
+		// The bounded queue blocks the submitting thread, so that not too many images are in memory.
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_SIZE_PER_THREAD * threadCount), new ThreadPoolExecutor.CallerRunsPolicy());
+
+		mStartTime = System.currentTimeMillis();
+		for (final File file : files) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					processFile(file);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		System.out.println(String.format(Locale.ENGLISH, "Finished: %d detected, %d skipped, %d failed, %.2f photos/sec",
+				mDetectedCount.get(), mSkippedCount.get(), mFailedCount.get(), getThroughput()));
+	}
+
+	/**
+	 * Recursively collect the JPEG files in a folder.
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @param files
+	 *            The list to which the files are added.
+	 */
+	private static void collectJpegFiles(final File folder, final List<File> files) {
+		File[] children = folder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File file) {
+				return file.isDirectory() || file.isFile() && file.getName().toUpperCase().endsWith(".JPG");
+			}
+		});
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				collectJpegFiles(child, files);
+			}
+			else {
+				files.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Determine the pupil and iris position of a file and store it, if not yet available.
+	 *
+	 * @param file
+	 *            The file.
+	 */
+	private void processFile(final File file) {
+		try {
+			JpegMetadata metadata = JpegMetadataUtil.getMetadata(file.getAbsolutePath());
+			if (metadata.getXCenter() != null && metadata.getPupilSize() != null
+					&& !metadata.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY)) {
+				mSkippedCount.incrementAndGet();
+			}
+			else {
+				// Files are processed in parallel, so each detection runs sequentially.
+				PupilAndIrisDetector detector = new PupilAndIrisDetector(ImageUtil.decodeImage(file), 1,
+						PreferenceUtil.getPreferenceBoolean(PreferenceUtil.KEY_DETECTION_FAST_STATISTICS));
+				if (detector.getPupilRadius() > 0 && detector.getIrisRadius() > detector.getPupilRadius()) {
+					detector.updateMetadata(metadata);
+					// The position is now detected, so that the file is skipped in subsequent runs.
+					metadata.removeFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY);
+					JpegMetadataUtil.changeMetadata(file.getAbsolutePath(), metadata);
+					mDetectedCount.incrementAndGet();
+				}
+				else {
+					mFailedCount.incrementAndGet();
+					System.err.println("Failed to find pupil and iris in " + file.getAbsolutePath());
+				}
+			}
+		}
+		catch (Exception e) {
+			mFailedCount.incrementAndGet();
+			System.err.println("Failed to process " + file.getAbsolutePath() + ": " + e);
+		}
+
+		int processedCount = mProcessedCount.incrementAndGet();
+		if (processedCount % PROGRESS_INTERVAL == 0 || processedCount == mTotalCount) {
+			System.out.println(String.format(Locale.ENGLISH, "Processed %d/%d photos, %.2f photos/sec",
+					processedCount, mTotalCount, getThroughput()));
+		}
+	}
+
+	/**
+	 * Get the number of processed photos per second.
+	 *
+	 * @return The throughput.
+	 */
+	private double getThroughput() {
+		long duration = System.currentTimeMillis() - mStartTime;
+		return duration == 0 ? 0 : mProcessedCount.get() * MILLIS_PER_SECOND / duration;
+	}
+}
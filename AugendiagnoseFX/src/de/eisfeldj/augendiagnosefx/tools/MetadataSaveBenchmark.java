@@ -0,0 +1,189 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Result;
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Task;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.XmpHandler;
+
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.IImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.jpeg.xmp.JpegXmpRewriter;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.MicrosoftTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * Tool to measure the throughput of saving metadata in a JPEG file. Compares the current single pass implementation
+ * of JpegMetadataUtil.changeMetadata with the former approach, which rewrote the complete file once for XMP and once
+ * for EXIF.
+ *
+ * <p>Usage: MetadataSaveBenchmark [-warmup n] [-iterations n] [-output file.csv|file.json] file. The file is not
+ * changed - the benchmark works on a copy.
+ */
+public final class MetadataSaveBenchmark {
+	/**
+	 * The default number of warm up iterations per measurement.
+	 */
+	private static final int DEFAULT_WARMUP = 2;
+
+	/**
+	 * The default number of measured iterations per measurement.
+	 */
+	private static final int DEFAULT_ITERATIONS = 20;
+
+	/**
+	 * The number of milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000.0;
+
+	/**
+	 * Counter used for the comment, so that each save really changes the file.
+	 */
+	private static int mSaveCounter = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private MetadataSaveBenchmark() {
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments: the common benchmark options and the JPEG file.
+	 * @throws Exception
+	 *             thrown if the metadata cannot be saved.
+	 */
+	public static void main(final String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		BenchmarkHarness harness = new BenchmarkHarness(args, DEFAULT_WARMUP, DEFAULT_ITERATIONS);
+		if (harness.getArguments().size() != 1) {
+			System.err.println("Usage: MetadataSaveBenchmark [-warmup n] [-iterations n] [-output file] file");
+			System.exit(1);
+		}
+		File sourceFile = new File(harness.getArguments().get(0));
+		if (!JpegMetadataUtil.changeJpegAllowed()) {
+			System.err.println("Storing metadata in JPEG files is disabled in the preferences.");
+			System.exit(1);
+		}
+
+		final File file = File.createTempFile("benchmark", ".jpg");
+		try {
+			Files.copy(sourceFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			harness.printHeader(String.format(Locale.ENGLISH, "File %s (%.1f MB)", sourceFile.getName(),
+					file.length() / (1024.0 * 1024.0))); // MAGIC_NUMBER
+
+			// The first save ensures that XMP data exists.
+			saveSinglePass(file);
+
+			Result twoPass = harness.run("metadata.change.twoPass", sourceFile.getName(), new Task() {
+				@Override
+				public void run() throws Exception {
+					saveTwoPass(file);
+				}
+			});
+			Result singlePass = harness.run("metadata.change.singlePass", sourceFile.getName(), new Task() {
+				@Override
+				public void run() throws Exception {
+					saveSinglePass(file);
+				}
+			});
+
+			System.out.println(String.format(Locale.ENGLISH,
+					"Two pass rewrite: %.1f saves/sec, single pass rewrite: %.1f saves/sec",
+					MILLIS_PER_SECOND / twoPass.getMedian(), MILLIS_PER_SECOND / singlePass.getMedian()));
+			harness.writeResults();
+		}
+		finally {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	/**
+	 * Save metadata with the current implementation, changing the comment.
+	 *
+	 * @param file
+	 *            The JPEG file.
+	 * @throws Exception
+	 *             thrown if the metadata cannot be saved.
+	 */
+	private static void saveSinglePass(final File file) throws Exception {
+		JpegMetadata metadata = JpegMetadataUtil.getMetadata(file.getAbsolutePath());
+		metadata.setComment("Benchmark " + mSaveCounter++);
+		JpegMetadataUtil.changeMetadata(file.getAbsolutePath(), metadata);
+	}
+
+	/**
+	 * Save metadata as formerly done, changing the comment: rewrite the complete file for XMP, then rewrite it again
+	 * for EXIF.
+	 *
+	 * @param file
+	 *            The JPEG file.
+	 * @throws Exception
+	 *             thrown if the metadata cannot be saved.
+	 */
+	private static void saveTwoPass(final File file) throws Exception {
+		JpegMetadata metadata = JpegMetadataUtil.getMetadata(file.getAbsolutePath());
+		metadata.setComment("Benchmark " + mSaveCounter++);
+		File tempFile = new File(file.getAbsolutePath() + ".temp");
+
+		XmpHandler parser = new XmpHandler(Imaging.getXmpXml(file));
+		parser.setUserComment(metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+			new JpegXmpRewriter().updateXmpXml(file, os, parser.getXmpString());
+		}
+		move(tempFile, file);
+
+		TiffOutputSet outputSet = null;
+		IImageMetadata imageMetadata = Imaging.getMetadata(file);
+		if (imageMetadata instanceof JpegImageMetadata) {
+			TiffImageMetadata exif = ((JpegImageMetadata) imageMetadata).getExif();
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
+			}
+		}
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
+		TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+		rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+		TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+		exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+		exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+			new ExifRewriter().updateExifMetadataLossless(file, os, outputSet);
+		}
+		move(tempFile, file);
+	}
+
+	/**
+	 * Replace a file by another file.
+	 *
+	 * @param source
+	 *            The source file.
+	 * @param target
+	 *            The target file.
+	 * @throws IOException
+	 *             thrown if the file cannot be moved.
+	 */
+	private static void move(final File source, final File target) throws IOException {
+		Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -0,0 +1,427 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Result;
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Task;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImagePyramid;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector.FxImage;
+import de.jeisfeld.augendiagnosecore.util.imagefile.PupilAndIrisDetectorCore;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+/**
+ * Benchmark suite for the hot paths of the image and metadata pipeline: image loading per resolution, color
+ * adjustment, overlay deformation, pupil and iris detection (end to end and per phase) and metadata reading and
+ * writing. Each benchmark is run via BenchmarkHarness, and the results are written in a machine readable format, so
+ * that regressions show up as numbers.
+ *
+ * <p>The corpus consists of a generated eye image of 12 megapixels (always identical, as it is generated with fixed
+ * seed) and of the given sample JPEG files or folders. Files are not changed - metadata is written to copies.
+ *
+ * <p>Usage: PipelineBenchmark [-warmup n] [-iterations n] [-output file.csv|file.json] [-headless] [files or
+ * folders]. Color adjustment, overlay deformation and loading in FULL resolution require the JavaFX toolkit and are
+ * skipped with -headless.
+ */
+public final class PipelineBenchmark extends javafx.application.Application {
+	/**
+	 * The default number of warm up iterations per benchmark.
+	 */
+	private static final int DEFAULT_WARMUP = 3;
+
+	/**
+	 * The default number of measured iterations per benchmark.
+	 */
+	private static final int DEFAULT_ITERATIONS = 10;
+
+	/**
+	 * The width of the generated eye image (12 megapixels, 4:3).
+	 */
+	private static final int SYNTHETIC_WIDTH = 4000;
+
+	/**
+	 * The height of the generated eye image.
+	 */
+	private static final int SYNTHETIC_HEIGHT = 3000;
+
+	/**
+	 * The color settings used for color adjustment: brightness, contrast, saturation, color temperature.
+	 */
+	private static final float[] COLOR_SETTINGS = {0.1f, 1.2f, 1.1f, 0.2f};
+
+	/**
+	 * The overlay type used for overlay deformation.
+	 */
+	private static final int OVERLAY_TYPE = 1;
+
+	/**
+	 * The step of pupil size between iterations of overlay deformation, so that each iteration misses the overlay
+	 * cache.
+	 */
+	private static final float PUPIL_SIZE_STEP = 0.001f;
+
+	/**
+	 * The number of different pupil sizes used for overlay deformation.
+	 */
+	private static final int PUPIL_SIZE_COUNT = 200;
+
+	/**
+	 * Flag indicating if the benchmarks run without JavaFX toolkit.
+	 */
+	private static boolean mIsHeadless = false;
+
+	/**
+	 * The sample files.
+	 */
+	private static List<File> mSampleFiles = new ArrayList<>();
+
+	/**
+	 * The benchmark harness.
+	 */
+	private static BenchmarkHarness mHarness;
+
+	/**
+	 * Counter used to vary the pupil size for overlay deformation.
+	 */
+	private int mPupilSizeCounter = 0;
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments.
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	public static void main(final String[] args) throws Exception {
+		mHarness = new BenchmarkHarness(args, DEFAULT_WARMUP, DEFAULT_ITERATIONS);
+		for (String arg : mHarness.getArguments()) {
+			if ("-headless".equals(arg)) {
+				mIsHeadless = true;
+			}
+			else {
+				collectJpegFiles(new File(arg), mSampleFiles);
+			}
+		}
+
+		if (mIsHeadless) {
+			System.setProperty("java.awt.headless", "true");
+			new PipelineBenchmark().runAll();
+		}
+		else {
+			launch(args);
+		}
+	}
+
+	@Override
+	public void start(final Stage primaryStage) throws Exception {
+		try {
+			runAll();
+		}
+		finally {
+			Platform.exit();
+		}
+	}
+
+	/**
+	 * Run all benchmarks on all files of the corpus and write the results.
+	 *
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	private void runAll() throws Exception {
+		File tempDir = Files.createTempDirectory("benchmark").toFile();
+		try {
+			List<File> corpus = new ArrayList<>();
+			corpus.add(createSyntheticEyeImage(new File(tempDir, "synthetic_eye.jpg")));
+			corpus.addAll(mSampleFiles);
+
+			mHarness.printHeader(corpus.size() + " files" + (mIsHeadless ? ", headless" : ""));
+
+			for (File file : corpus) {
+				File copy = new File(tempDir, "copy_" + file.getName());
+				Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+				runImageLoading(copy, file.getName());
+				runColorAdjustmentAndOverlay(copy, file.getName());
+				runDetection(copy, file.getName());
+				runMetadata(copy, file.getName());
+
+				if (!copy.delete()) {
+					System.err.println("Failed to delete " + copy.getAbsolutePath());
+				}
+			}
+		}
+		finally {
+			File[] files = tempDir.listFiles();
+			for (File file : files == null ? new File[0] : files) {
+				if (!file.delete()) {
+					System.err.println("Failed to delete " + file.getAbsolutePath());
+				}
+			}
+			if (!tempDir.delete()) {
+				System.err.println("Failed to delete " + tempDir.getAbsolutePath());
+			}
+		}
+
+		mHarness.writeResults();
+	}
+
+	/**
+	 * Run the benchmarks of ImageUtil.loadImage for all resolutions.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param input
+	 *            The name of the input in the results.
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	private void runImageLoading(final File file, final String input) throws Exception {
+		for (final Resolution resolution : Resolution.values()) {
+			if (resolution == Resolution.FULL && mIsHeadless) {
+				// Decoding in full resolution is done by JavaFX.
+				continue;
+			}
+			mHarness.run("loadImage." + resolution, input, new Task() {
+				@Override
+				public void run() {
+					ImageUtil.loadImage(file, resolution);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Run the benchmarks of color adjustment and overlay deformation, based on the image in NORMAL resolution.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param input
+	 *            The name of the input in the results.
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	private void runColorAdjustmentAndOverlay(final File file, final String input) throws Exception {
+		if (mIsHeadless) {
+			// Both use Canvas snapshots.
+			return;
+		}
+		final Image image = ImageUtil.loadImage(file, Resolution.NORMAL);
+		final JpegMetadata metadata = new JpegMetadata();
+		metadata.setXCenter(0.5f); // MAGIC_NUMBER
+		metadata.setYCenter(0.5f); // MAGIC_NUMBER
+		metadata.setOverlayScaleFactor(0.8f); // MAGIC_NUMBER
+		metadata.setPupilXOffset(0.02f); // MAGIC_NUMBER
+		metadata.setPupilYOffset(-0.01f); // MAGIC_NUMBER
+
+		mHarness.run("colorAdjustment", input, new Task() {
+			@Override
+			public void run() {
+				ImageUtil.getImageForDisplay(image, metadata, RightLeft.RIGHT, null, Color.RED, COLOR_SETTINGS[0],
+						COLOR_SETTINGS[1], COLOR_SETTINGS[2], COLOR_SETTINGS[3], Resolution.NORMAL); // MAGIC_NUMBER
+			}
+		});
+
+		mHarness.run("overlayDeformation", input, new Task() {
+			@Override
+			public void run() {
+				// A new pupil size in each iteration, so that the deformed overlay is calculated.
+				mPupilSizeCounter = (mPupilSizeCounter + 1) % PUPIL_SIZE_COUNT;
+				metadata.setPupilSize(0.15f + mPupilSizeCounter * PUPIL_SIZE_STEP); // MAGIC_NUMBER
+				ImageUtil.getImageForDisplay(image, metadata, RightLeft.RIGHT, OVERLAY_TYPE, Color.RED, 0, 1, 1, 0,
+						Resolution.NORMAL);
+			}
+		});
+	}
+
+	/**
+	 * Run the benchmarks of pupil and iris detection. Each iteration runs a complete detection, measuring the total
+	 * duration and the duration of each phase.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param input
+	 *            The name of the input in the results.
+	 * @throws Exception
+	 *             thrown if the image cannot be decoded.
+	 */
+	private void runDetection(final File file, final String input) throws Exception {
+		Image image = ImageUtil.decodeImage(file);
+		int[] resolutions = PupilAndIrisDetectorCore.getPupilSearchResolutions();
+
+		Result total = new Result("detector.total", input);
+		Result initial = new Result("detector.initialParameters", input);
+		List<Result> refinements = new ArrayList<>();
+		for (int i = 1; i < resolutions.length; i++) {
+			refinements.add(new Result("detector.refinePupil." + resolutions[i], input));
+		}
+		Result iris = new Result("detector.refineIris", input);
+
+		for (int iteration = 0; iteration < mHarness.getWarmup() + mHarness.getIterations(); iteration++) {
+			boolean isMeasured = mHarness.isMeasured(iteration);
+			// A new image pyramid in each iteration, as the detection calculates the scaled images.
+			ImagePyramid imagePyramid = new ImagePyramid(image);
+			PupilAndIrisDetectorCore detector = new PupilAndIrisDetectorCore(new FxImage(image, imagePyramid), 1, false);
+
+			// Same phases as PupilAndIrisDetectorCore.detect().
+			long startTime = System.nanoTime();
+			detector.determineInitialParameterValues();
+			long phaseEndTime = System.nanoTime();
+			initial.add(phaseEndTime - startTime, isMeasured);
+
+			for (int i = 1; i < resolutions.length; i++) {
+				long phaseStartTime = phaseEndTime;
+				detector.refinePupilPosition(resolutions[i]);
+				phaseEndTime = System.nanoTime();
+				refinements.get(i - 1).add(phaseEndTime - phaseStartTime, isMeasured);
+				if (resolutions[i] >= image.getWidth() && resolutions[i] >= image.getHeight()) {
+					break;
+				}
+			}
+
+			long phaseStartTime = phaseEndTime;
+			detector.refineIrisPosition();
+			phaseEndTime = System.nanoTime();
+			iris.add(phaseEndTime - phaseStartTime, isMeasured);
+			total.add(phaseEndTime - startTime, isMeasured);
+		}
+
+		mHarness.report(total);
+		mHarness.report(initial);
+		for (Result refinement : refinements) {
+			if (!refinement.isEmpty()) {
+				mHarness.report(refinement);
+			}
+		}
+		mHarness.report(iris);
+	}
+
+	/**
+	 * Run the benchmarks of reading and changing metadata.
+	 *
+	 * @param file
+	 *            The image file, which may be changed.
+	 * @param input
+	 *            The name of the input in the results.
+	 * @throws Exception
+	 *             thrown if a benchmark fails.
+	 */
+	private void runMetadata(final File file, final String input) throws Exception {
+		mHarness.run("metadata.get", input, new Task() {
+			@Override
+			public void run() throws Exception {
+				JpegMetadataUtil.getMetadata(file.getAbsolutePath());
+			}
+		});
+
+		if (!JpegMetadataUtil.changeJpegAllowed()) {
+			System.err.println("Storing metadata in JPEG files is disabled in the preferences - skipping metadata.change");
+			return;
+		}
+		final JpegMetadata metadata = JpegMetadataUtil.getMetadata(file.getAbsolutePath());
+		mHarness.run("metadata.change", input, new Task() {
+			@Override
+			public void run() throws Exception {
+				// A new value in each iteration, so that the file is really changed.
+				metadata.setComment("Benchmark " + System.nanoTime());
+				JpegMetadataUtil.changeMetadata(file.getAbsolutePath(), metadata);
+			}
+		});
+	}
+
+	/**
+	 * Collect the JPEG files in a folder and its subfolders.
+	 *
+	 * @param file
+	 *            A JPEG file or a folder.
+	 * @param files
+	 *            The list to which the files are added.
+	 */
+	private static void collectJpegFiles(final File file, final List<File> files) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (File child : children) {
+					collectJpegFiles(child, files);
+				}
+			}
+		}
+		else if (file.getName().toLowerCase(Locale.ENGLISH).matches(".*\\.jpe?g")) {
+			files.add(file);
+		}
+	}
+
+	/**
+	 * Create a JPEG file with a generated eye image: a dark pupil within a textured iris on bright background. The
+	 * image is generated with fixed seed, so that it is identical in each run.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The file.
+	 * @throws IOException
+	 *             thrown if the file cannot be written.
+	 */
+	private static File createSyntheticEyeImage(final File file) throws IOException {
+		Random random = new Random(0);
+		BufferedImage image = new BufferedImage(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		double irisX = SYNTHETIC_WIDTH * 0.52; // MAGIC_NUMBER
+		double irisY = SYNTHETIC_HEIGHT * 0.48; // MAGIC_NUMBER
+		double irisRadius = SYNTHETIC_HEIGHT * 0.35; // MAGIC_NUMBER
+		double pupilRadius = irisRadius * 0.3; // MAGIC_NUMBER
+
+		int[] row = new int[SYNTHETIC_WIDTH];
+		for (int y = 0; y < SYNTHETIC_HEIGHT; y++) {
+			for (int x = 0; x < SYNTHETIC_WIDTH; x++) {
+				double distance = Math.hypot(x - irisX, y - irisY);
+				int noise = random.nextInt(24); // MAGIC_NUMBER
+				int red;
+				int green;
+				int blue;
+				if (distance < pupilRadius) {
+					red = 10 + noise / 2; // MAGIC_NUMBER
+					green = 8 + noise / 2; // MAGIC_NUMBER
+					blue = 8 + noise / 2; // MAGIC_NUMBER
+				}
+				else if (distance < irisRadius) {
+					// Radial fibres.
+					double angle = Math.atan2(y - irisY, x - irisX);
+					int fibre = (int) (30 * Math.sin(angle * 90)); // MAGIC_NUMBER
+					red = 110 + fibre + noise; // MAGIC_NUMBER
+					green = 75 + fibre + noise; // MAGIC_NUMBER
+					blue = 40 + fibre / 2 + noise; // MAGIC_NUMBER
+				}
+				else {
+					red = 215 + noise; // MAGIC_NUMBER
+					green = 200 + noise; // MAGIC_NUMBER
+					blue = 190 + noise; // MAGIC_NUMBER
+				}
+				row[x] = red << 16 | green << 8 | blue; // MAGIC_NUMBER
+			}
+			image.setRGB(0, y, SYNTHETIC_WIDTH, 1, row, 0, SYNTHETIC_WIDTH);
+		}
+
+		ImageIO.write(image, "jpg", file);
+		return file;
+	}
+}
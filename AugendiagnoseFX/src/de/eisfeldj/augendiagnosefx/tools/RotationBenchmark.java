@@ -0,0 +1,222 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Result;
+import de.eisfeldj.augendiagnosefx.tools.BenchmarkHarness.Task;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Stage;
+
+/**
+ * Tool to compare the throughput of image rotation via Canvas snapshot (the former implementation of
+ * ImageUtil.getImage) with rotation via pixel buffers.
+ *
+ * <p>Usage: RotationBenchmark [-warmup n] [-iterations n] [-output file.csv|file.json] [image file]. Without image
+ * file, a random image of 12 megapixels is used. Canvas rotation requires the FX application thread, so that the tool
+ * runs as JavaFX application.
+ */
+public final class RotationBenchmark extends javafx.application.Application {
+	/**
+	 * The default number of warm up iterations per measurement.
+	 */
+	private static final int DEFAULT_WARMUP = 1;
+
+	/**
+	 * The default number of measured iterations per measurement.
+	 */
+	private static final int DEFAULT_ITERATIONS = 10;
+
+	/**
+	 * The width of the generated test image (12 megapixels, 4:3).
+	 */
+	private static final int TEST_IMAGE_WIDTH = 4000;
+
+	/**
+	 * The height of the generated test image.
+	 */
+	private static final int TEST_IMAGE_HEIGHT = 3000;
+
+	/**
+	 * The tested rotation angles.
+	 */
+	private static final int[] ROTATIONS = {90, 180, 270};
+
+	/**
+	 * The number of milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000.0;
+
+	/**
+	 * The number of pixels per megapixel.
+	 */
+	private static final double PIXELS_PER_MEGAPIXEL = 1000000.0;
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments.
+	 */
+	public static void main(final String[] args) {
+		launch(args);
+	}
+
+	@Override
+	public void start(final Stage primaryStage) throws Exception {
+		BenchmarkHarness harness = new BenchmarkHarness(getParameters().getRaw().toArray(new String[0]), DEFAULT_WARMUP,
+				DEFAULT_ITERATIONS);
+		final int threadCount = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+		try {
+			File file = harness.getArguments().isEmpty() ? null : new File(harness.getArguments().get(0));
+			final Image image = file == null ? createTestImage() : ImageUtil.decodeImage(file);
+			String input = file == null ? "random" : file.getName();
+			double megapixels = image.getWidth() * image.getHeight() / PIXELS_PER_MEGAPIXEL;
+			harness.printHeader(String.format(Locale.ENGLISH, "Image %.0fx%.0f (%.1f MP)", image.getWidth(),
+					image.getHeight(), megapixels));
+
+			for (final int rotation : ROTATIONS) {
+				Result canvas = harness.run("rotation.canvas." + rotation, input, new Task() {
+					@Override
+					public void run() {
+						rotateViaCanvas(image, rotation);
+					}
+				});
+				Result pixels = harness.run("rotation.pixels." + rotation, input, new Task() {
+					@Override
+					public void run() {
+						ImageUtil.rotateImage(image, rotation);
+					}
+				});
+				// Pixel rotation running in parallel on all processors, as done when loading thumbnails in background.
+				Result parallel = harness.run("rotation.parallel." + rotation, input, new Task() {
+					@Override
+					public void run() throws Exception {
+						rotateInParallel(executor, image, rotation, threadCount);
+					}
+				});
+
+				double parallelMillis = parallel.getMedian() / threadCount;
+				System.out.println(String.format(Locale.ENGLISH,
+						"Rotation %3d: canvas %.1f ms (%.1f MP/s), pixels %.1f ms (%.1f MP/s), "
+								+ "pixels on %d threads %.1f ms per image (%.1f MP/s)",
+						rotation, canvas.getMedian(), megapixels * MILLIS_PER_SECOND / canvas.getMedian(),
+						pixels.getMedian(), megapixels * MILLIS_PER_SECOND / pixels.getMedian(),
+						threadCount, parallelMillis, megapixels * MILLIS_PER_SECOND / parallelMillis));
+			}
+			harness.writeResults();
+		}
+		catch (IOException e) {
+			System.err.println("Failed to read image: " + e);
+		}
+		finally {
+			executor.shutdown();
+			Platform.exit();
+		}
+	}
+
+	/**
+	 * Rotate an image once per thread, in parallel.
+	 *
+	 * @param executor
+	 *            The executor.
+	 * @param image
+	 *            The image.
+	 * @param rotation
+	 *            The rotation angle.
+	 * @param threadCount
+	 *            The number of threads of the executor.
+	 * @throws Exception
+	 *             thrown if a rotation fails.
+	 */
+	private static void rotateInParallel(final ExecutorService executor, final Image image, final int rotation,
+			final int threadCount) throws Exception {
+		List<Future<Image>> futures = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			futures.add(executor.submit(new Callable<Image>() {
+				@Override
+				public Image call() {
+					return ImageUtil.rotateImage(image, rotation);
+				}
+			}));
+		}
+		for (Future<Image> future : futures) {
+			future.get();
+		}
+	}
+
+	/**
+	 * Rotate an image via Canvas snapshot, as formerly done in ImageUtil.getImage.
+	 *
+	 * @param image
+	 *            The image.
+	 * @param rotation
+	 *            The rotation angle.
+	 * @return The rotated image.
+	 */
+	private static Image rotateViaCanvas(final Image image, final int rotation) {
+		double width = image.getWidth();
+		double height = image.getHeight();
+
+		Canvas canvas;
+		GraphicsContext gc;
+
+		switch (rotation) {
+		case 90: // MAGIC_NUMBER
+			canvas = new Canvas(height, width);
+			gc = canvas.getGraphicsContext2D();
+			gc.setTransform(0, 1, -1, 0, height, 0);
+			break;
+		case 180: // MAGIC_NUMBER
+			canvas = new Canvas(width, height);
+			gc = canvas.getGraphicsContext2D();
+			gc.setTransform(-1, 0, 0, -1, width, height);
+			break;
+		case 270: // MAGIC_NUMBER
+			canvas = new Canvas(height, width);
+			gc = canvas.getGraphicsContext2D();
+			gc.setTransform(0, -1, 1, 0, 0, width);
+			break;
+		default:
+			canvas = new Canvas(width, height);
+			gc = canvas.getGraphicsContext2D();
+		}
+
+		gc.drawImage(image, 0, 0);
+		return canvas.snapshot(null, null);
+	}
+
+	/**
+	 * Create an opaque random test image.
+	 *
+	 * @return The test image.
+	 */
+	private static Image createTestImage() {
+		Random random = new Random(0);
+		int[] pixels = new int[TEST_IMAGE_WIDTH * TEST_IMAGE_HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt() | 0xFF000000; // MAGIC_NUMBER
+		}
+		WritableImage image = new WritableImage(TEST_IMAGE_WIDTH, TEST_IMAGE_HEIGHT);
+		image.getPixelWriter().setPixels(0, 0, TEST_IMAGE_WIDTH, TEST_IMAGE_HEIGHT, PixelFormat.getIntArgbInstance(),
+				pixels, 0, TEST_IMAGE_WIDTH);
+		return image;
+	}
+}
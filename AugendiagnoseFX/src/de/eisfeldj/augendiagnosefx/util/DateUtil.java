@@ -4,12 +4,25 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Utility class for handling dates.
  */
 public final class DateUtil {
+	/**
+	 * The date formats of the current thread, by format and locale. (SimpleDateFormat is not thread safe, and its
+	 * creation is expensive when parsing many file names.)
+	 */
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> DATE_FORMATS =
+			new ThreadLocal<Map<String, SimpleDateFormat>>() {
+				@Override
+				protected Map<String, SimpleDateFormat> initialValue() {
+					return new HashMap<>();
+				}
+			};
 
 	/**
 	 * Hide default constructor.
@@ -29,8 +42,7 @@ public final class DateUtil {
 	 * @throws ParseException thrown if the date string cannog be parsed.
 	 */
 	public static Date parse(final String date, final String format) throws ParseException {
-		SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.getDefault());
-		return dateFormat.parse(date);
+		return getDateFormat(format).parse(date);
 	}
 
 	/**
@@ -43,8 +55,26 @@ public final class DateUtil {
 	 * @return the formatted date
 	 */
 	public static String format(final Date date, final String format) {
-		DateFormat dateFormat = new SimpleDateFormat(format, Locale.getDefault());
-		return dateFormat.format(date);
+		return getDateFormat(format).format(date);
+	}
+
+	/**
+	 * Get the date format of the current thread for a given format and the default locale.
+	 *
+	 * @param format
+	 *            the date format
+	 * @return the date format
+	 */
+	private static SimpleDateFormat getDateFormat(final String format) {
+		Locale locale = Locale.getDefault();
+		String key = format + "|" + locale;
+		Map<String, SimpleDateFormat> dateFormats = DATE_FORMATS.get();
+		SimpleDateFormat dateFormat = dateFormats.get(key);
+		if (dateFormat == null) {
+			dateFormat = new SimpleDateFormat(format, locale);
+			dateFormats.put(key, dateFormat);
+		}
+		return dateFormat;
 	}
 
 	/**
@@ -98,6 +98,57 @@ public final class PreferenceUtil {
 	 */
 	public static final String KEY_INDEXED_OVERLAY_TYPE = "key_overlay_type";
 
+	/**
+	 * Preference key for the number of threads used for pupil and iris detection (0 meaning the number of processors).
+	 */
+	public static final String KEY_DETECTION_PARALLELISM = "key_detection_parallelism";
+
+	/**
+	 * Preference key for the flag indicating if pupil and iris detection should use fast approximate statistics.
+	 */
+	public static final String KEY_DETECTION_FAST_STATISTICS = "key_detection_fast_statistics";
+
+	/**
+	 * Preference key for the maximum memory used by cached image pyramids (in MB).
+	 */
+	public static final String KEY_IMAGE_PYRAMID_CACHE_SIZE = "key_image_pyramid_cache_size";
+
+	/**
+	 * Preference key for the maximum memory used by cached thumbnails (in MB).
+	 */
+	public static final String KEY_IMAGE_CACHE_SIZE_THUMB = "key_image_cache_size_thumb";
+
+	/**
+	 * Preference key for the maximum memory used by cached images in normal resolution (in MB).
+	 */
+	public static final String KEY_IMAGE_CACHE_SIZE_NORMAL = "key_image_cache_size_normal";
+
+	/**
+	 * Preference key for the flag indicating if thumbnails should be stored on disk for faster loading.
+	 */
+	public static final String KEY_USE_THUMBNAIL_STORE = "key_use_thumbnail_store";
+
+	/**
+	 * The part of the maximum heap size used by default for cached thumbnails, images in normal resolution and image
+	 * pyramids.
+	 */
+	private static final double IMAGE_CACHE_HEAP_FRACTION = 0.4;
+
+	/**
+	 * The part of the image cache memory used by default for thumbnails.
+	 */
+	private static final double THUMB_CACHE_FRACTION = 0.125;
+
+	/**
+	 * The part of the image cache memory used by default for images in normal resolution.
+	 */
+	private static final double NORMAL_CACHE_FRACTION = 0.375;
+
+	/**
+	 * The number of bytes per megabyte.
+	 */
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
 	/**
 	 * A map of default values for preferences.
 	 */
@@ -125,6 +176,15 @@ public final class PreferenceUtil {
 		DEFAULT_MAP.put(KEY_UPDATE_AUTOMATICALLY, false);
 		DEFAULT_MAP.put(KEY_LANGUAGE, 0);
 		DEFAULT_MAP.put(KEY_LAST_KNOWN_VERSION, VersioningUtil.CURRENT_VERSION.getVersionNumber());
+		DEFAULT_MAP.put(KEY_DETECTION_PARALLELISM, 0);
+		DEFAULT_MAP.put(KEY_DETECTION_FAST_STATISTICS, false);
+		// The image caches share a fixed part of the heap, so that they cannot exhaust it.
+		long imageCacheMb = (long) (Runtime.getRuntime().maxMemory() * IMAGE_CACHE_HEAP_FRACTION / BYTES_PER_MB);
+		DEFAULT_MAP.put(KEY_IMAGE_CACHE_SIZE_THUMB, (int) (imageCacheMb * THUMB_CACHE_FRACTION));
+		DEFAULT_MAP.put(KEY_IMAGE_CACHE_SIZE_NORMAL, (int) (imageCacheMb * NORMAL_CACHE_FRACTION));
+		DEFAULT_MAP.put(KEY_IMAGE_PYRAMID_CACHE_SIZE,
+				(int) (imageCacheMb * (1 - THUMB_CACHE_FRACTION - NORMAL_CACHE_FRACTION)));
+		DEFAULT_MAP.put(KEY_USE_THUMBNAIL_STORE, true);
 
 		setDefaultOverlayTypes();
 	}
@@ -60,6 +60,22 @@ public final class SystemUtil {
 		return new File(new File(System.getProperty("java.io.tmpdir")), Application.APPLICATION_NAME);
 	}
 
+	/**
+	 * Get the application directory for persistent cache data. On Windows, this is located in the local application
+	 * data, otherwise in the user home.
+	 *
+	 * @return The cache directory.
+	 */
+	public static File getCacheDir() {
+		String localAppData = System.getenv("LOCALAPPDATA");
+		if (localAppData != null) {
+			return new File(new File(localAppData), Application.APPLICATION_NAME);
+		}
+		else {
+			return new File(new File(System.getProperty("user.home"), ".cache"), Application.APPLICATION_NAME);
+		}
+	}
+
 	/**
 	 * Get the path of the JVM.
 	 *
@@ -0,0 +1,246 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.RowBandProcessor;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Adjustment of brightness, contrast, saturation and color temperature of BGRA pixel buffers, simulating the logic
+ * from android OverlayPinchImageView.changeBitmapContrastBrightness.
+ *
+ * <p>The per-channel products are precomputed in tables of 256 entries, so that the result is identical to the
+ * calculation per pixel. If the saturation is unchanged, the channels are independent, and each channel is converted
+ * by a single byte table. The rows are processed in parallel.
+ */
+public final class ColorAdjustment {
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The number of values of a byte.
+	 */
+	private static final int BYTE_VALUES = 256;
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The maximum number of pooled pixel buffers.
+	 */
+	private static final int MAX_POOLED_BUFFERS = 4;
+
+	/**
+	 * The pixel buffers available for reuse.
+	 */
+	private static final Deque<SoftReference<byte[]>> BUFFER_POOL = new ArrayDeque<>();
+
+	// JAVADOC:OFF
+	// The channel values multiplied with the factor of the channel and with saturation or opposite saturation.
+	private final float[] mBlueSaturated = new float[BYTE_VALUES];
+	private final float[] mBlueOpposite = new float[BYTE_VALUES];
+	private final float[] mGreenSaturated = new float[BYTE_VALUES];
+	private final float[] mGreenOpposite = new float[BYTE_VALUES];
+	private final float[] mRedSaturated = new float[BYTE_VALUES];
+	private final float[] mRedOpposite = new float[BYTE_VALUES];
+
+	// The resulting channel values, if the saturation is unchanged.
+	private byte[] mBlueTable = null;
+	private byte[] mGreenTable = null;
+	private byte[] mRedTable = null;
+
+	// JAVADOC:ON
+
+	/**
+	 * The offset added to each channel.
+	 */
+	private final float mOffset;
+
+	/**
+	 * Create a color adjustment.
+	 *
+	 * @param brightness
+	 *            The brightness.
+	 * @param contrast
+	 *            The contrast.
+	 * @param saturation
+	 *            The saturation.
+	 * @param colorTemperature
+	 *            The color temperature.
+	 */
+	public ColorAdjustment(final float brightness, final float contrast, final float saturation,
+			final float colorTemperature) {
+		Color temperatureColor = convertTemperatureToColor(colorTemperature);
+		float factorBlue = 1 / (float) temperatureColor.getBlue();
+		float factorGreen = 1 / (float) temperatureColor.getGreen();
+		float factorRed = 1 / (float) temperatureColor.getRed();
+		float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
+		factorBlue *= correctionFactor * contrast;
+		factorGreen *= correctionFactor * contrast;
+		factorRed *= correctionFactor * contrast;
+		mOffset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
+		float oppositeSaturation = (1 - saturation) / 2;
+
+		for (int i = 0; i < BYTE_VALUES; i++) {
+			float blueIn = i * factorBlue;
+			float greenIn = i * factorGreen;
+			float redIn = i * factorRed;
+			mBlueSaturated[i] = saturation * blueIn;
+			mBlueOpposite[i] = oppositeSaturation * blueIn;
+			mGreenSaturated[i] = saturation * greenIn;
+			mGreenOpposite[i] = oppositeSaturation * greenIn;
+			mRedSaturated[i] = saturation * redIn;
+			mRedOpposite[i] = oppositeSaturation * redIn;
+		}
+
+		if (oppositeSaturation == 0) {
+			// All opposite values are zero, so that each channel depends only on its own input value.
+			mBlueTable = new byte[BYTE_VALUES];
+			mGreenTable = new byte[BYTE_VALUES];
+			mRedTable = new byte[BYTE_VALUES];
+			for (int i = 0; i < BYTE_VALUES; i++) {
+				mBlueTable[i] = toColorByte(mBlueSaturated[i] + mGreenOpposite[0] + mRedOpposite[0] + mOffset);
+				mGreenTable[i] = toColorByte(mBlueOpposite[0] + mGreenSaturated[i] + mRedOpposite[0] + mOffset);
+				mRedTable[i] = toColorByte(mBlueOpposite[0] + mGreenOpposite[0] + mRedSaturated[i] + mOffset);
+			}
+		}
+	}
+
+	/**
+	 * Apply the adjustment to a buffer of BGRA pixels. The alpha channel is not changed.
+	 *
+	 * @param buffer
+	 *            The pixel buffer.
+	 * @param width
+	 *            The width of the image.
+	 * @param height
+	 *            The height of the image.
+	 */
+	public void apply(final byte[] buffer, final int width, final int height) {
+		ImageUtil.processInRowBands(height, new RowBandProcessor() {
+			@Override
+			public void processRows(final int startRow, final int endRow) {
+				int start = startRow * width * BYTES_PER_PIXEL;
+				int end = endRow * width * BYTES_PER_PIXEL;
+				if (mBlueTable != null) {
+					applyTables(buffer, start, end);
+				}
+				else {
+					applyMixed(buffer, start, end);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Apply the adjustment to a part of a pixel buffer via the byte tables, if the saturation is unchanged.
+	 *
+	 * @param buffer
+	 *            The pixel buffer.
+	 * @param start
+	 *            The start index in the buffer.
+	 * @param end
+	 *            The end index in the buffer.
+	 */
+	private void applyTables(final byte[] buffer, final int start, final int end) {
+		for (int i = start; i < end; i += BYTES_PER_PIXEL) {
+			buffer[i] = mBlueTable[buffer[i] & BYTE];
+			buffer[i + 1] = mGreenTable[buffer[i + 1] & BYTE];
+			buffer[i + 2] = mRedTable[buffer[i + 2] & BYTE];
+		}
+	}
+
+	/**
+	 * Apply the adjustment to a part of a pixel buffer, mixing the channels due to changed saturation.
+	 *
+	 * @param buffer
+	 *            The pixel buffer.
+	 * @param start
+	 *            The start index in the buffer.
+	 * @param end
+	 *            The end index in the buffer.
+	 */
+	private void applyMixed(final byte[] buffer, final int start, final int end) {
+		for (int i = start; i < end; i += BYTES_PER_PIXEL) {
+			int blue = buffer[i] & BYTE;
+			int green = buffer[i + 1] & BYTE;
+			int red = buffer[i + 2] & BYTE;
+
+			buffer[i] = toColorByte(mBlueSaturated[blue] + mGreenOpposite[green] + mRedOpposite[red] + mOffset);
+			buffer[i + 1] = toColorByte(mBlueOpposite[blue] + mGreenSaturated[green] + mRedOpposite[red] + mOffset);
+			buffer[i + 2] = toColorByte(mBlueOpposite[blue] + mGreenOpposite[green] + mRedSaturated[red] + mOffset);
+		}
+	}
+
+	/**
+	 * Get a pixel buffer of a certain size, reusing a pooled buffer if available.
+	 *
+	 * @param size
+	 *            The size of the buffer.
+	 * @return The buffer.
+	 */
+	public static byte[] obtainBuffer(final int size) {
+		synchronized (BUFFER_POOL) {
+			Iterator<SoftReference<byte[]>> iterator = BUFFER_POOL.iterator();
+			while (iterator.hasNext()) {
+				byte[] buffer = iterator.next().get();
+				if (buffer == null) {
+					iterator.remove();
+				}
+				else if (buffer.length == size) {
+					iterator.remove();
+					return buffer;
+				}
+			}
+		}
+		return new byte[size];
+	}
+
+	/**
+	 * Return a pixel buffer to the pool, after its content is not needed any more.
+	 *
+	 * @param buffer
+	 *            The buffer.
+	 */
+	public static void releaseBuffer(final byte[] buffer) {
+		synchronized (BUFFER_POOL) {
+			if (BUFFER_POOL.size() >= MAX_POOLED_BUFFERS) {
+				BUFFER_POOL.removeLast();
+			}
+			BUFFER_POOL.addFirst(new SoftReference<>(buffer));
+		}
+	}
+
+	/**
+	 * Convert a number into a byte (ensuring the appropriate range).
+	 *
+	 * @param number The number.
+	 * @return The resulting byte.
+	 */
+	private static byte toColorByte(final float number) {
+		return (byte) Math.min(BYTE, Math.max(0, number));
+	}
+
+	/**
+	 * Convert a temperature into a color value representing the color of this temperature.
+	 *
+	 * @param temperature The temperature value (in the range -1..1).
+	 * @return The color value.
+	 */
+	private static Color convertTemperatureToColor(final double temperature) {
+		if (temperature >= 0) {
+			return Color.rgb((int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE); // MAGIC_NUMBER
+		}
+		else {
+			return Color.rgb(BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)); // MAGIC_NUMBER
+		}
+	}
+}
@@ -2,14 +2,14 @@ package de.eisfeldj.augendiagnosefx.util.imagefile;
 
 import java.io.File;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 
 import de.eisfeldj.augendiagnosefx.util.DateUtil;
 import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
@@ -24,10 +24,6 @@ public class EyePhoto {
 	 * The date format used for the file name.
 	 */
 	private static final String DATE_FORMAT = "yyyy-MM-dd";
-	/**
-	 * The maximum size of the image cache.
-	 */
-	private static final int MAX_IMAGE_CACHE = 4;
 
 	/**
 	 * Indicator if the file has already a formatted name.
@@ -64,27 +60,13 @@ public class EyePhoto {
 	 */
 	private String mSuffix;
 
-	/**
-	 * A cache of the bitmap (to avoid too frequent generation).
-	 */
-	private Image mCachedImage;
-
-	/**
-	 * A cache of the thumbnail.
-	 */
-	private Image mCachedThumbnail;
-
-	/**
-	 * The list of eye photos having a cached image.
-	 */
-	private static final List<WeakReference<EyePhoto>> CACHED_EYE_PHOTOS = new ArrayList<>();
-
 	/**
 	 * A map from path to EyePhoto objects - for reuse.
 	 *
-	 * <p>Note: WeakHashMap cannot be used, as the garbage collection should be dependent on values, not on keys.
+	 * <p>Note: WeakHashMap cannot be used, as the garbage collection should be dependent on values, not on keys. The
+	 * map is concurrent, so that photos of different paths can be created in parallel.
 	 */
-	private static final HashMap<String, WeakReference<EyePhoto>> EYE_PHOTO_MAP = new HashMap<>();
+	private static final ConcurrentHashMap<String, WeakReference<EyePhoto>> EYE_PHOTO_MAP = new ConcurrentHashMap<>();
 
 	/**
 	 * Create the EyePhoto, giving a file resource.
@@ -112,18 +94,27 @@ public class EyePhoto {
 	 * @return The EyePhoto.
 	 */
 	public static EyePhoto fromFile(final File file) {
-		synchronized (EYE_PHOTO_MAP) {
-			EyePhoto eyePhoto = null;
-			WeakReference<EyePhoto> eyePhotoReference = EYE_PHOTO_MAP.get(file.getAbsolutePath());
-			if (eyePhotoReference != null) {
-				eyePhoto = eyePhotoReference.get();
-			}
-			if (eyePhoto == null) {
-				eyePhoto = new EyePhoto(file);
-				EYE_PHOTO_MAP.put(file.getAbsolutePath(), new WeakReference<>(eyePhoto));
-			}
+		String path = file.getAbsolutePath();
+		WeakReference<EyePhoto> eyePhotoReference = EYE_PHOTO_MAP.get(path);
+		EyePhoto eyePhoto = eyePhotoReference == null ? null : eyePhotoReference.get();
+		if (eyePhoto != null) {
 			return eyePhoto;
 		}
+
+		// Creation within compute, as the constructor may rename the file.
+		final EyePhoto[] result = new EyePhoto[1];
+		EYE_PHOTO_MAP.compute(path, new BiFunction<String, WeakReference<EyePhoto>, WeakReference<EyePhoto>>() {
+			@Override
+			public WeakReference<EyePhoto> apply(final String key, final WeakReference<EyePhoto> oldReference) {
+				result[0] = oldReference == null ? null : oldReference.get();
+				if (result[0] != null) {
+					return oldReference;
+				}
+				result[0] = new EyePhoto(file);
+				return new WeakReference<>(result[0]);
+			}
+		});
+		return result[0];
 	}
 
 	/**
@@ -382,53 +373,73 @@ public class EyePhoto {
 	 * @return the Image
 	 */
 	public final Image getImage(final Resolution resolution) {
+		return getImage(resolution, false);
+	}
+
+	/**
+	 * Return an Image of this photo, loading it completely in the current thread. In contrast to getImage, this does
+	 * not require the FX application thread, so that it can be used from worker threads.
+	 *
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @return the Image
+	 */
+	public final Image loadImage(final Resolution resolution) {
+		return getImage(resolution, true);
+	}
+
+	/**
+	 * Return an Image of this photo.
+	 *
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @param inCurrentThread
+	 *            flag indicating if the image should be loaded completely in the current thread.
+	 * @return the Image
+	 */
+	private Image getImage(final Resolution resolution, final boolean inCurrentThread) {
 		switch (resolution) {
 		case THUMB:
-			if (mCachedThumbnail == null) {
-				mCachedThumbnail = ImageUtil.getImage(getFile(), Resolution.THUMB);
-			}
-			return mCachedThumbnail;
 		case NORMAL:
-			Image result = mCachedImage;
+			Image result = ImageCache.get(getFile(), resolution);
 			if (result == null) {
-				result = ImageUtil.getImage(getFile(), Resolution.NORMAL);
-				synchronized (CACHED_EYE_PHOTOS) {
-					mCachedImage = result;
-					CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
-					// Ensure that not too many images are cached
-					if (CACHED_EYE_PHOTOS.size() > MAX_IMAGE_CACHE) {
-						EyePhoto firstInList = CACHED_EYE_PHOTOS.get(0).get();
-						if (firstInList != null) {
-							firstInList.mCachedImage = null;
-						}
-						CACHED_EYE_PHOTOS.remove(0);
+				ImagePyramid imagePyramid = ImagePyramid.getCachedImagePyramid(getFile());
+				if (imagePyramid == null) {
+					if (!inCurrentThread) {
+						result = ImageUtil.getImage(getFile(), resolution);
 					}
-				}
-			}
-			else {
-				synchronized (CACHED_EYE_PHOTOS) {
-					int index = -1;
-					for (int i = 0; i < CACHED_EYE_PHOTOS.size(); i++) {
-						if (CACHED_EYE_PHOTOS.get(i).get() == this) {
-							index = i;
-							break;
-						}
+					else if (resolution == Resolution.THUMB) {
+						result = ThumbnailStore.loadThumbnail(getFile());
 					}
-					if (index >= 0) {
-						CACHED_EYE_PHOTOS.remove(index);
-						CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
+					else {
+						result = ImageUtil.loadImage(getFile(), resolution);
 					}
 				}
+				else {
+					result = imagePyramid.getImage(PreferenceUtil.getPreferenceInt(resolution == Resolution.THUMB
+							? PreferenceUtil.KEY_THUMBNAIL_SIZE : PreferenceUtil.KEY_MAX_BITMAP_SIZE));
+				}
+				ImageCache.put(getFile(), resolution, result);
 			}
 			return result;
 		case FULL:
-			// Full size image is not cached.
-			return ImageUtil.getImage(getFile(), Resolution.FULL);
+			// Full size image is cached via the image pyramid.
+			return getImagePyramid().getBaseImage();
 		default:
 			return null;
 		}
 	}
 
+	/**
+	 * Return the image pyramid of this photo, which allows retrieval of the image in various sizes without decoding
+	 * the file again.
+	 *
+	 * @return the image pyramid.
+	 */
+	public final ImagePyramid getImagePyramid() {
+		return ImagePyramid.getImagePyramid(getFile());
+	}
+
 	/**
 	 * Change the personName renaming the file (keeping the path).
 	 *
@@ -623,7 +634,8 @@ public class EyePhoto {
 		 * @return the converted RightString.
 		 */
 		public static final RightLeft fromString(final String rightLeftString) {
-			if (rightLeftString != null && rightLeftString.matches("[rRdD].*")) {
+			if (rightLeftString != null && rightLeftString.length() > 0
+					&& "rRdD".indexOf(rightLeftString.charAt(0)) >= 0) {
 				return RIGHT;
 			}
 			else {
@@ -0,0 +1,303 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.scene.image.Image;
+
+/**
+ * Process-wide cache of decoded images, limited by the memory size of the images. There is one cache per resolution,
+ * each with its own memory limit, from which the least recently used images are removed. By default, the limits are a
+ * fixed part of the maximum heap size. Images are identified by path and modification date of the file, so that
+ * changed files are loaded again.
+ *
+ * <p>Full resolution images are not handled here, but are cached via ImagePyramid.
+ */
+public final class ImageCache {
+	/**
+	 * The number of bytes per megabyte.
+	 */
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The caches per resolution.
+	 */
+	private static final Map<Resolution, CacheTier> CACHE_TIERS = new EnumMap<>(Resolution.class);
+
+	static {
+		CACHE_TIERS.put(Resolution.THUMB, new CacheTier(PreferenceUtil.KEY_IMAGE_CACHE_SIZE_THUMB));
+		CACHE_TIERS.put(Resolution.NORMAL, new CacheTier(PreferenceUtil.KEY_IMAGE_CACHE_SIZE_NORMAL));
+	}
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ImageCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get an image from the cache.
+	 *
+	 * @param file The image file.
+	 * @param resolution The resolution.
+	 * @return The image, or null if it is not cached.
+	 */
+	public static Image get(final File file, final Resolution resolution) {
+		CacheTier cacheTier = CACHE_TIERS.get(resolution);
+		return cacheTier == null ? null : cacheTier.get(file);
+	}
+
+	/**
+	 * Check if an image is in the cache, without counting this as access.
+	 *
+	 * @param file The image file.
+	 * @param resolution The resolution.
+	 * @return true if the image is cached.
+	 */
+	public static boolean contains(final File file, final Resolution resolution) {
+		CacheTier cacheTier = CACHE_TIERS.get(resolution);
+		return cacheTier != null && cacheTier.contains(file);
+	}
+
+	/**
+	 * Store an image in the cache.
+	 *
+	 * @param file The image file.
+	 * @param resolution The resolution.
+	 * @param image The image.
+	 */
+	public static void put(final File file, final Resolution resolution, final Image image) {
+		CacheTier cacheTier = CACHE_TIERS.get(resolution);
+		if (cacheTier != null) {
+			cacheTier.put(file, image);
+		}
+	}
+
+	/**
+	 * Get a summary of the cache statistics.
+	 *
+	 * @return The statistics as String.
+	 */
+	public static String getStatistics() {
+		StringBuilder statistics = new StringBuilder("Image cache");
+		for (Resolution resolution : CACHE_TIERS.keySet()) {
+			CacheTier cacheTier = CACHE_TIERS.get(resolution);
+			synchronized (cacheTier) {
+				statistics.append(" - ").append(resolution).append(": ").append(cacheTier.mEntries.size())
+						.append(" images, ").append(cacheTier.mTotalBytes / BYTES_PER_MB).append(" MB, ")
+						.append(cacheTier.mHitCount).append(" hits, ").append(cacheTier.mMissCount).append(" misses, ")
+						.append(cacheTier.mEvictionCount).append(" evictions");
+			}
+		}
+		return statistics.toString();
+	}
+
+	/**
+	 * Get the memory size of an image. For images loaded in background, the requested size is used as estimation.
+	 *
+	 * @param image The image.
+	 * @return The size in bytes.
+	 */
+	private static long getByteSize(final Image image) {
+		double width = image.getWidth() > 0 ? image.getWidth() : image.getRequestedWidth();
+		double height = image.getHeight() > 0 ? image.getHeight() : image.getRequestedHeight();
+		return (long) width * (long) height * BYTES_PER_PIXEL;
+	}
+
+	/**
+	 * The cache for one resolution.
+	 */
+	private static final class CacheTier {
+		/**
+		 * The preference key for the memory limit of this cache (in MB).
+		 */
+		private final String mSizePreferenceKey;
+
+		/**
+		 * The cached images, in order of last access.
+		 */
+		private final LinkedHashMap<CacheKey, CacheEntry> mEntries = new LinkedHashMap<>(16, 0.75f, true); // MAGIC_NUMBER
+
+		/**
+		 * The keys of the cached images by path.
+		 */
+		private final Map<String, CacheKey> mKeysByPath = new HashMap<>();
+
+		/**
+		 * The total memory size of the cached images.
+		 */
+		private long mTotalBytes = 0;
+
+		/**
+		 * The number of cache hits.
+		 */
+		private long mHitCount = 0;
+
+		/**
+		 * The number of cache misses.
+		 */
+		private long mMissCount = 0;
+
+		/**
+		 * The number of images removed because of the memory limit.
+		 */
+		private long mEvictionCount = 0;
+
+		/**
+		 * Create a cache.
+		 *
+		 * @param sizePreferenceKey The preference key for the memory limit of this cache (in MB).
+		 */
+		private CacheTier(final String sizePreferenceKey) {
+			mSizePreferenceKey = sizePreferenceKey;
+		}
+
+		/**
+		 * Get an image from the cache.
+		 *
+		 * @param file The image file.
+		 * @return The image, or null if it is not cached.
+		 */
+		private synchronized Image get(final File file) {
+			CacheEntry entry = mEntries.get(new CacheKey(file.getAbsolutePath(), file.lastModified()));
+			if (entry == null) {
+				mMissCount++;
+				return null;
+			}
+			mHitCount++;
+			return entry.mImage;
+		}
+
+		/**
+		 * Check if an image is in the cache, without counting this as access.
+		 *
+		 * @param file The image file.
+		 * @return true if the image is cached.
+		 */
+		private synchronized boolean contains(final File file) {
+			return mEntries.containsKey(new CacheKey(file.getAbsolutePath(), file.lastModified()));
+		}
+
+		/**
+		 * Store an image in the cache.
+		 *
+		 * @param file The image file.
+		 * @param image The image.
+		 */
+		private synchronized void put(final File file, final Image image) {
+			String path = file.getAbsolutePath();
+			remove(path);
+
+			CacheKey key = new CacheKey(path, file.lastModified());
+			CacheEntry entry = new CacheEntry(image, getByteSize(image));
+			mEntries.put(key, entry);
+			mKeysByPath.put(path, key);
+			mTotalBytes += entry.mByteSize;
+
+			// Remove least recently used images, but keep the new one.
+			long maxBytes = PreferenceUtil.getPreferenceInt(mSizePreferenceKey) * BYTES_PER_MB;
+			Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = mEntries.entrySet().iterator();
+			while (mTotalBytes > maxBytes && mEntries.size() > 1) {
+				Map.Entry<CacheKey, CacheEntry> eldest = iterator.next();
+				mTotalBytes -= eldest.getValue().mByteSize;
+				mKeysByPath.remove(eldest.getKey().mPath);
+				iterator.remove();
+				mEvictionCount++;
+			}
+		}
+
+		/**
+		 * Remove the image of a path from the cache.
+		 *
+		 * @param path The file path.
+		 */
+		private synchronized void remove(final String path) {
+			CacheKey key = mKeysByPath.remove(path);
+			if (key != null) {
+				CacheEntry entry = mEntries.remove(key);
+				if (entry != null) {
+					mTotalBytes -= entry.mByteSize;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The key of a cached image.
+	 */
+	private static final class CacheKey {
+		/**
+		 * The file path.
+		 */
+		private final String mPath;
+
+		/**
+		 * The modification date of the file.
+		 */
+		private final long mLastModified;
+
+		/**
+		 * Create a key.
+		 *
+		 * @param path The file path.
+		 * @param lastModified The modification date of the file.
+		 */
+		private CacheKey(final String path, final long lastModified) {
+			mPath = path;
+			mLastModified = lastModified;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (!(other instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey otherKey = (CacheKey) other;
+			return mPath.equals(otherKey.mPath) && mLastModified == otherKey.mLastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return mPath.hashCode() * 31 + Long.hashCode(mLastModified); // MAGIC_NUMBER
+		}
+	}
+
+	/**
+	 * A cached image together with its memory size.
+	 */
+	private static final class CacheEntry {
+		/**
+		 * The image.
+		 */
+		private final Image mImage;
+
+		/**
+		 * The memory size of the image.
+		 */
+		private final long mByteSize;
+
+		/**
+		 * Create a cache entry.
+		 *
+		 * @param image The image.
+		 * @param byteSize The memory size of the image.
+		 */
+		private CacheEntry(final Image image, final long byteSize) {
+			mImage = image;
+			mByteSize = byteSize;
+		}
+	}
+}
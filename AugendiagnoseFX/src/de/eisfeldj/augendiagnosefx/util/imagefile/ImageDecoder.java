@@ -0,0 +1,202 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import de.jeisfeld.augendiagnosecore.util.imagefile.PupilAndIrisDetectorCore.ArgbRaster;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Decoding of image files via ImageIO, reading only the pixels which are required. Images in reduced size are decoded
+ * with subsampling by a power of two. The EXIF rotation is applied, and the results are converted directly into
+ * images.
+ *
+ * <p>In contrast to the JavaFX image loading, this does not require the JavaFX toolkit, so that it can be used in
+ * headless mode and outside the FX application thread.
+ */
+public final class ImageDecoder {
+	/**
+	 * The number of bytes per pixel of images decoded as BGR.
+	 */
+	private static final int BYTES_PER_PIXEL = 3;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ImageDecoder() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Decode an image file scaled down to a maximum size. The file is decoded with the largest power of two subsampling
+	 * still giving at least the target size, and the result is scaled down to the target size by averaging the pixels.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param maxSize
+	 *            The maximum of width and height of the image.
+	 * @return The image.
+	 * @throws IOException
+	 *             thrown if the file cannot be decoded.
+	 */
+	public static Image decodeImage(final File file, final int maxSize) throws IOException {
+		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+
+		BufferedImage bufferedImage;
+		try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+			ImageReader reader = getReader(file, input);
+			try {
+				int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), maxSize);
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				bufferedImage = reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		Image image;
+		if (width <= maxSize && height <= maxSize) {
+			image = ImageUtil.createImage(bufferedImage);
+		}
+		else {
+			int targetWidth;
+			int targetHeight;
+			if (width > height) {
+				targetWidth = maxSize;
+				targetHeight = Math.max(1, maxSize * height / width);
+			}
+			else {
+				targetWidth = Math.max(1, maxSize * width / height);
+				targetHeight = maxSize;
+			}
+			int[] pixels = ArgbRaster.scalePixels(getArgbPixels(bufferedImage), width, height, targetWidth, targetHeight);
+			image = ImageUtil.createImage(pixels, targetWidth, targetHeight);
+		}
+		bufferedImage.flush();
+
+		return rotation == 0 ? image : ImageUtil.rotateImage(image, rotation);
+	}
+
+	/**
+	 * Get the subsampling factor for decoding an image in reduced size. This is the largest power of two for which the
+	 * subsampled image still has at least the target size.
+	 *
+	 * @param width
+	 *            The width of the image.
+	 * @param height
+	 *            The height of the image.
+	 * @param maxSize
+	 *            The target size (maximum of width and height).
+	 * @return The subsampling factor.
+	 */
+	public static int getSubsampling(final int width, final int height, final int maxSize) {
+		int size = Math.max(width, height);
+		int subsampling = 1;
+		while (maxSize > 0 && size / (2 * subsampling) >= maxSize) {
+			subsampling *= 2;
+		}
+		return subsampling;
+	}
+
+	/**
+	 * Get an image reader for an image file.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param input
+	 *            The input stream of the file.
+	 * @return The image reader, with the input set.
+	 * @throws IOException
+	 *             thrown if there is no reader for the file.
+	 */
+	private static ImageReader getReader(final File file, final ImageInputStream input) throws IOException {
+		Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+		if (readers == null || !readers.hasNext()) {
+			throw new IOException("Cannot decode image file " + file.getAbsolutePath());
+		}
+		ImageReader reader = readers.next();
+		reader.setInput(input, true, true);
+		return reader;
+	}
+
+	/**
+	 * Get the ARGB pixels of a decoded AWT image. Images in BGR format, as created by the JPEG decoder, are converted
+	 * directly from the raster data.
+	 *
+	 * @param bufferedImage
+	 *            The AWT image.
+	 * @return The pixels.
+	 */
+	static int[] getArgbPixels(final BufferedImage bufferedImage) {
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		if (!isPackedBgr(bufferedImage)) {
+			return bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+		}
+
+		byte[] data = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+		int[] pixels = new int[width * height];
+		for (int i = 0, j = 0; i < pixels.length; i++, j += BYTES_PER_PIXEL) {
+			pixels[i] = 0xFF000000 | (data[j + 2] & 0xFF) << 16 | (data[j + 1] & 0xFF) << 8 | data[j] & 0xFF; // MAGIC_NUMBER
+		}
+		return pixels;
+	}
+
+	/**
+	 * Convert a decoded AWT image into an image. Images in BGR format, as created by the JPEG decoder, are written
+	 * directly from the raster data, without intermediate pixel array.
+	 *
+	 * @param bufferedImage
+	 *            The AWT image. Its raster data may be modified.
+	 * @return The image.
+	 */
+	static Image toImage(final BufferedImage bufferedImage) {
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		if (!isPackedBgr(bufferedImage)) {
+			return ImageUtil.createImage(bufferedImage.getRGB(0, 0, width, height, null, 0, width), width, height);
+		}
+
+		// Swap to RGB order in place, as JavaFX has no BGR format.
+		byte[] data = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+		for (int j = 0; j < BYTES_PER_PIXEL * width * height; j += BYTES_PER_PIXEL) {
+			byte blue = data[j];
+			data[j] = data[j + 2];
+			data[j + 2] = blue;
+		}
+		WritableImage image = new WritableImage(width, height);
+		image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteRgbInstance(), data, 0,
+				BYTES_PER_PIXEL * width);
+		return image;
+	}
+
+	/**
+	 * Check if an AWT image is stored as packed BGR bytes, covering its complete raster.
+	 *
+	 * @param bufferedImage
+	 *            The AWT image.
+	 * @return true if the image is stored as packed BGR bytes.
+	 */
+	private static boolean isPackedBgr(final BufferedImage bufferedImage) {
+		return bufferedImage.getType() == BufferedImage.TYPE_3BYTE_BGR
+				&& bufferedImage.getRaster().getParent() == null
+				&& bufferedImage.getRaster().getDataBuffer().getNumBanks() == 1
+				&& ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData().length
+						== BYTES_PER_PIXEL * bufferedImage.getWidth() * bufferedImage.getHeight();
+	}
+}
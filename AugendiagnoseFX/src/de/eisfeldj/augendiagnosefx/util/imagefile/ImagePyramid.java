@@ -0,0 +1,199 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.scene.image.Image;
+
+/**
+ * An image together with downsampled versions of it. Each level has half the size of the previous level and is
+ * calculated from it by averaging. Levels are calculated only when needed.
+ *
+ * <p>The image pyramids of eye photos are cached, so that the image is decoded only once for display, thumbnails and
+ * pupil detection.
+ */
+public final class ImagePyramid {
+	/**
+	 * The minimum size of the smallest level.
+	 */
+	private static final int MIN_LEVEL_SIZE = 64;
+
+	/**
+	 * The number of bytes per megabyte.
+	 */
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The cached image pyramids of eye photos, by file path, in order of last access.
+	 */
+	private static final Map<String, ImagePyramid> PYRAMID_CACHE = new LinkedHashMap<>(16, 0.75f, true); // MAGIC_NUMBER
+
+	/**
+	 * The levels calculated so far. Level 0 is the original image.
+	 */
+	private final List<Image> mLevels = new ArrayList<>();
+
+	/**
+	 * The modification timestamp of the file from which the image was loaded.
+	 */
+	private long mLastModified = 0;
+
+	/**
+	 * Create an image pyramid for an image.
+	 *
+	 * @param baseImage The original image.
+	 */
+	public ImagePyramid(final Image baseImage) {
+		mLevels.add(baseImage);
+	}
+
+	/**
+	 * Get the image pyramid of a file, decoding the file only if it is not cached.
+	 *
+	 * @param file The image file.
+	 * @return The image pyramid.
+	 */
+	public static ImagePyramid getImagePyramid(final File file) {
+		ImagePyramid imagePyramid = getCachedImagePyramid(file);
+		if (imagePyramid != null) {
+			return imagePyramid;
+		}
+
+		long lastModified = file.lastModified();
+		imagePyramid = new ImagePyramid(ImageUtil.getImage(file, Resolution.FULL));
+		imagePyramid.mLastModified = lastModified;
+
+		synchronized (PYRAMID_CACHE) {
+			PYRAMID_CACHE.put(file.getAbsolutePath(), imagePyramid);
+			cleanCache();
+		}
+		return imagePyramid;
+	}
+
+	/**
+	 * Get the image pyramid of a file, if it is cached.
+	 *
+	 * @param file The image file.
+	 * @return The image pyramid, or null if it is not cached or if the file has changed.
+	 */
+	public static ImagePyramid getCachedImagePyramid(final File file) {
+		synchronized (PYRAMID_CACHE) {
+			ImagePyramid imagePyramid = PYRAMID_CACHE.get(file.getAbsolutePath());
+			if (imagePyramid != null && imagePyramid.mLastModified != file.lastModified()) {
+				PYRAMID_CACHE.remove(file.getAbsolutePath());
+				imagePyramid = null;
+			}
+			return imagePyramid;
+		}
+	}
+
+	/**
+	 * Remove the least recently used image pyramids from the cache until the cache size is respected. The last used
+	 * image pyramid is always kept.
+	 */
+	private static void cleanCache() {
+		long maxBytes = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_IMAGE_PYRAMID_CACHE_SIZE) * BYTES_PER_MB;
+		long totalBytes = 0;
+		for (ImagePyramid imagePyramid : PYRAMID_CACHE.values()) {
+			totalBytes += imagePyramid.getByteSize();
+		}
+
+		Iterator<ImagePyramid> iterator = PYRAMID_CACHE.values().iterator();
+		while (totalBytes > maxBytes && PYRAMID_CACHE.size() > 1) {
+			totalBytes -= iterator.next().getByteSize();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Get the original image.
+	 *
+	 * @return The original image.
+	 */
+	public Image getBaseImage() {
+		return mLevels.get(0);
+	}
+
+	/**
+	 * Get the image in a certain size. The image is calculated from the smallest level which is not smaller than the
+	 * requested size.
+	 *
+	 * @param maxSize The maximum of width and height of the image.
+	 * @return The image. If the original image is smaller, then the original image is returned.
+	 */
+	public Image getImage(final int maxSize) {
+		int levelIndex = 0;
+		Image level = getBaseImage();
+		while (getMaxSize(level) / 2 >= Math.max(maxSize, MIN_LEVEL_SIZE)) {
+			level = getLevel(++levelIndex);
+		}
+		return ImageUtil.scaleImage(level, maxSize);
+	}
+
+	/**
+	 * Get the index of the smallest level which is still at least as large as the image displayed in a certain scale.
+	 * The level is not calculated by this method.
+	 *
+	 * @param scale The scale in which the original image is displayed.
+	 * @return The index of the level.
+	 */
+	public int getLevelIndex(final double scale) {
+		int levelSize = getMaxSize(getBaseImage());
+		double displaySize = scale * levelSize;
+		int levelIndex = 0;
+		while (levelSize / 2 >= Math.max(displaySize, MIN_LEVEL_SIZE)) {
+			levelSize /= 2;
+			levelIndex++;
+		}
+		return levelIndex;
+	}
+
+	/**
+	 * Get a level, calculating it if required.
+	 *
+	 * @param levelIndex The index of the level.
+	 * @return The level.
+	 */
+	public synchronized Image getLevel(final int levelIndex) {
+		while (mLevels.size() <= levelIndex) {
+			Image previousLevel = mLevels.get(mLevels.size() - 1);
+			mLevels.add(ImageUtil.scaleImage(previousLevel, getMaxSize(previousLevel) / 2));
+		}
+		return mLevels.get(levelIndex);
+	}
+
+	/**
+	 * Get the memory size of the levels calculated so far.
+	 *
+	 * @return The size in bytes.
+	 */
+	private synchronized long getByteSize() {
+		long byteSize = 0;
+		for (Image level : mLevels) {
+			byteSize += (long) level.getWidth() * (long) level.getHeight() * BYTES_PER_PIXEL;
+		}
+		return byteSize;
+	}
+
+	/**
+	 * Get the maximum of width and height of an image.
+	 *
+	 * @param image The image.
+	 * @return The maximum of width and height.
+	 */
+	private static int getMaxSize(final Image image) {
+		return (int) Math.max(image.getWidth(), image.getHeight());
+	}
+}
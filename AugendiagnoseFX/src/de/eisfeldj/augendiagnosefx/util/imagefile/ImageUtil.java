@@ -1,14 +1,30 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
 
 import de.eisfeldj.augendiagnosefx.util.Logger;
 import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+import de.jeisfeld.augendiagnosecore.util.imagefile.PupilAndIrisDetectorCore.ArgbRaster;
 
 import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
@@ -20,6 +36,8 @@ import javafx.scene.effect.DisplacementMap;
 import javafx.scene.effect.FloatMap;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
 import javafx.scene.image.WritablePixelFormat;
 import javafx.scene.paint.Color;
 
@@ -51,28 +69,86 @@ public final class ImageUtil {
 	 */
 	private static final float[] ORIG_PUPIL_SIZES = {0.25f, 0.28f, 0.28f, 0.21f, 0.24f, 0.24f, 0.21f, 0.24f, 0.16f};
 
+	/**
+	 * The size of the square blocks in which pixels are rotated, so that source and target stay in the CPU cache.
+	 */
+	private static final int ROTATION_BLOCK_SIZE = 64;
+
 	/**
 	 * The number four.
 	 */
 	private static final int FOUR = 4;
+
+	/**
+	 * The maximum number of cached overlays.
+	 */
+	private static final int OVERLAY_CACHE_SIZE = 8;
+
+	/**
+	 * The number of steps per unit to which pupil parameters are rounded for caching the overlays.
+	 */
+	private static final float PUPIL_PARAMETER_STEPS = 1000;
+
+	/**
+	 * The number of processors used for processing images in parallel.
+	 */
+	private static final int PROCESSOR_COUNT = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The executor processing row bands of images in parallel.
+	 */
+	private static final ExecutorService ROW_BAND_EXECUTOR = Executors.newFixedThreadPool(PROCESSOR_COUNT, new ThreadFactory() {
+		/**
+		 * The number of created threads.
+		 */
+		private final AtomicInteger mThreadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "ImageProcessor-" + mThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * A cache of colored overlays - to prevent reloading the overlay file for each pupil change.
+	 */
+	private static final Map<List<Object>, Image> COLORED_OVERLAY_CACHE = createLruCache(OVERLAY_CACHE_SIZE);
+
 	/**
-	 * The size of a byte.
+	 * A cache of warped overlays - to prevent frequent recalculation while sliding brightness and contrast, and to
+	 * allow displaying overlays with different parameters in parallel.
 	 */
-	private static final int BYTE = 0xFF;
+	private static final Map<List<Object>, Image> OVERLAY_CACHE = createLruCache(OVERLAY_CACHE_SIZE);
 
 	/**
-	 * A cache of one overlay - to prevent frequent recalculation while sliding brightness and contrast.
+	 * The first x coordinate inside the iris, for each row of the overlay.
 	 */
-	// JAVADOC:OFF
-	private static Image mCachedOverlay;
-	private static Integer mCachedOverlayType = null;
-	private static RightLeft mCachedOverlaySide;
-	private static Color mCachedOverlayColor;
-	private static float mCachedPupilSize;
-	private static float mCachedPupilXOffset;
-	private static float mCachedPupilYOffset;
+	private static final int[] IRIS_SPAN_START = new int[OVERLAY_SIZE];
 
-	// JAVADOC:ON
+	/**
+	 * The x coordinate after the iris, for each row of the overlay.
+	 */
+	private static final int[] IRIS_SPAN_END = new int[OVERLAY_SIZE];
+
+	static {
+		int overlayHalfSize = OVERLAY_SIZE / 2;
+		int irisRadius = (int) (OVERLAY_CIRCLE_RATIO * overlayHalfSize);
+		long irisRadiusSquare = irisRadius * irisRadius;
+		for (int y = 0; y < OVERLAY_SIZE; y++) {
+			int yPos = y - overlayHalfSize;
+			IRIS_SPAN_START[y] = overlayHalfSize;
+			IRIS_SPAN_END[y] = overlayHalfSize;
+			for (int x = 0; x < OVERLAY_SIZE; x++) {
+				int xPos = x - overlayHalfSize;
+				if (xPos * xPos + yPos * yPos < irisRadiusSquare) {
+					IRIS_SPAN_START[y] = Math.min(IRIS_SPAN_START[y], x);
+					IRIS_SPAN_END[y] = x + 1;
+				}
+			}
+		}
+	}
 
 	/**
 	 * Do not allow instantiation.
@@ -82,7 +158,33 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Get an image from a file.
+	 * Create a map which removes the least recently used entry if exceeding a maximum size.
+	 *
+	 * @param maxSize
+	 *            The maximum size.
+	 * @param <K>
+	 *            The key type.
+	 * @param <V>
+	 *            The value type.
+	 * @return The map.
+	 */
+	private static <K, V> Map<K, V> createLruCache(final int maxSize) {
+		return new LinkedHashMap<K, V>(2 * maxSize, 0.75f, true) { // MAGIC_NUMBER
+			/**
+			 * The serial version UID.
+			 */
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Get an image from a file. Images in reduced resolution are decoded with subsampling in the current thread, while
+	 * images in full resolution without rotation are loaded by JavaFX.
 	 *
 	 * @param file
 	 *            The image file.
@@ -91,70 +193,80 @@ public final class ImageUtil {
 	 * @return the image.
 	 */
 	public static Image getImage(final File file, final Resolution resolution) {
-		URL url = null;
-		try {
-			url = file.toURI().toURL();
+		if (resolution == Resolution.FULL && JpegMetadataUtil.getExifOrientationAngle(file) == 0) {
+			return new Image(getUrl(file).toExternalForm());
 		}
-		catch (MalformedURLException e) {
-			Logger.error("Could not convert to URL", e);
-			throw new RuntimeException(e);
+		else {
+			// need to load in foreground and apply rotation or subsampling.
+			return loadImage(file, resolution);
 		}
+	}
 
-		int maxSize = resolution == Resolution.THUMB
-				? PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE)
-				: PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
-
-		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+	/**
+	 * Load an image from a file completely in the current thread, applying the EXIF rotation on the pixels. In
+	 * contrast to getImage, this does not use the FX application thread, so that it can be called from worker threads.
+	 * Images in reduced resolution are decoded with subsampling, so that the full size pixels are never stored.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @return the image.
+	 */
+	public static Image loadImage(final File file, final Resolution resolution) {
+		URL url = getUrl(file);
+		int maxSize = getMaxSize(resolution);
 
-		if (rotation == 0) {
-			if (resolution == Resolution.FULL) {
-				return new Image(url.toExternalForm());
+		if (resolution != Resolution.FULL) {
+			try {
+				return ImageDecoder.decodeImage(file, maxSize);
 			}
-			else {
-				return new Image(url.toExternalForm(), maxSize, maxSize, true, true, true);
+			catch (IOException e) {
+				// Formats not supported by ImageIO are decoded by JavaFX.
+				Logger.warning("Failed to decode image " + file.getAbsolutePath() + " via ImageIO: " + e.getMessage());
 			}
 		}
-		else {
-			// need to load in foreground and apply rotation.
-			Image image;
-			if (resolution == Resolution.FULL) {
-				image = new Image(url.toExternalForm());
-			}
-			else {
-				image = new Image(url.toExternalForm(), maxSize, maxSize, true, true);
-			}
 
-			double width = image.getWidth();
-			double height = image.getHeight();
-
-			Canvas canvas;
-			GraphicsContext gc;
-
-			switch (rotation) {
-			case 90: // MAGIC_NUMBER
-				canvas = new Canvas(height, width);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(0, 1, -1, 0, height, 0);
-				break;
-			case 180: // MAGIC_NUMBER
-				canvas = new Canvas(width, height);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(-1, 0, 0, -1, width, height);
-				break;
-			case 270: // MAGIC_NUMBER
-				canvas = new Canvas(height, width);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(0, -1, 1, 0, 0, width);
-				break;
-			default:
-				canvas = new Canvas(width, height);
-				gc = canvas.getGraphicsContext2D();
-			}
+		Image image;
+		if (resolution == Resolution.FULL) {
+			image = new Image(url.toExternalForm(), false);
+		}
+		else {
+			image = new Image(url.toExternalForm(), maxSize, maxSize, true, true, false);
+		}
 
-			gc.drawImage(image, 0, 0);
+		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+		return rotation == 0 ? image : rotateImage(image, rotation);
+	}
 
-			return canvas.snapshot(null, null);
+	/**
+	 * Get the URL of a file.
+	 *
+	 * @param file
+	 *            The file.
+	 * @return The URL.
+	 */
+	private static URL getUrl(final File file) {
+		try {
+			return file.toURI().toURL();
 		}
+		catch (MalformedURLException e) {
+			Logger.error("Could not convert to URL", e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Get the maximum size of images in a certain resolution.
+	 *
+	 * @param resolution
+	 *            The resolution.
+	 * @return The maximum of width and height.
+	 */
+	private static int getMaxSize(final Resolution resolution) {
+		return resolution == Resolution.THUMB
+				? PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE)
+				: PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
 	}
 
 	/**
@@ -230,6 +342,12 @@ public final class ImageUtil {
 	 * @return The overlay image.
 	 */
 	private static Image getOverlayImage(final int overlayType, final RightLeft side, final Color color) {
+		List<Object> key = Arrays.<Object> asList(overlayType, side, color);
+		Image cachedImage = COLORED_OVERLAY_CACHE.get(key);
+		if (cachedImage != null) {
+			return cachedImage;
+		}
+
 		URL imageUrl = ClassLoader.getSystemResource("overlay/" + getOverlayFileName(overlayType, side));
 
 		Image image = new Image(imageUrl.toExternalForm());
@@ -256,11 +374,14 @@ public final class ImageUtil {
 		SnapshotParameters parameters = new SnapshotParameters();
 		parameters.setFill(Color.TRANSPARENT);
 
-		return canvas.snapshot(parameters, null);
+		Image result = canvas.snapshot(parameters, null);
+		COLORED_OVERLAY_CACHE.put(key, result);
+		return result;
 	}
 
 	/**
-	 * Retrieve an overlay image, warped due to pupil size and position.
+	 * Retrieve an overlay image, warped due to pupil size and position. The pupil parameters are rounded, so that
+	 * slider movements below the resolution of the overlay reuse the cached overlay.
 	 *
 	 * @param overlayType
 	 *            The overlay type.
@@ -278,84 +399,170 @@ public final class ImageUtil {
 	 */
 	private static Image getOverlayImage(final int overlayType, final RightLeft side, final Color color,
 			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
-		if (mCachedOverlayType != null && overlayType == mCachedOverlayType // BOOLEAN_EXPRESSION_COMPLEXITY
-				&& side == mCachedOverlaySide && color.equals(mCachedOverlayColor)
-				&& pupilXOffset == mCachedPupilXOffset && pupilYOffset == mCachedPupilYOffset && pupilSize == mCachedPupilSize) {
-			return mCachedOverlay;
+		int pupilXOffsetSteps = Math.round(pupilXOffset * PUPIL_PARAMETER_STEPS);
+		int pupilYOffsetSteps = Math.round(pupilYOffset * PUPIL_PARAMETER_STEPS);
+		int pupilSizeSteps = Math.round(pupilSize * PUPIL_PARAMETER_STEPS);
+		List<Object> key = Arrays.<Object> asList(overlayType, side, color, pupilXOffsetSteps, pupilYOffsetSteps, pupilSizeSteps);
+		Image cachedImage = OVERLAY_CACHE.get(key);
+		if (cachedImage != null) {
+			return cachedImage;
 		}
 
 		Image originalImage = getOverlayImage(overlayType, side, color);
 		Canvas canvas = new Canvas(OVERLAY_SIZE, OVERLAY_SIZE);
 
-		int overlayHalfSize = OVERLAY_SIZE / 2;
-		int irisRadius = (int) (OVERLAY_CIRCLE_RATIO * overlayHalfSize);
-		long irisRadiusSquare = irisRadius * irisRadius;
-		float pupilXCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilXOffset / (1 - pupilSize);
-		float pupilYCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilYOffset / (1 - pupilSize);
-		float origPupilSize = ORIG_PUPIL_SIZES[overlayType];
-		float linTransM = pupilSize == 1 ? 0 : (1 - origPupilSize) / (1 - pupilSize);
-		float linTransB = 1 - linTransM;
-
+		float[] displacement = getOverlayDisplacement(overlayType, pupilXOffsetSteps / PUPIL_PARAMETER_STEPS,
+				pupilYOffsetSteps / PUPIL_PARAMETER_STEPS, pupilSizeSteps / PUPIL_PARAMETER_STEPS);
 		FloatMap floatMap = new FloatMap(OVERLAY_SIZE, OVERLAY_SIZE);
-		for (int x = 0; x < OVERLAY_SIZE; x++) {
-			int xPos = x - overlayHalfSize;
-			float xPosP = xPos - pupilXCenter;
+		for (int y = 0; y < OVERLAY_SIZE; y++) {
+			for (int x = 0; x < OVERLAY_SIZE; x++) {
+				int index = 2 * (y * OVERLAY_SIZE + x);
+				floatMap.setSamples(x, y, displacement[index], displacement[index + 1]);
+			}
+		}
 
-			for (int y = 0; y < OVERLAY_SIZE; y++) {
-				int yPos = y - overlayHalfSize;
-				float yPosP = yPos - pupilYCenter;
+		DisplacementMap displacementMap = new DisplacementMap(floatMap);
+		canvas.getGraphicsContext2D().setEffect(displacementMap);
+		canvas.getGraphicsContext2D().drawImage(originalImage, 0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
 
-				long centerDistSquare = xPos * xPos + yPos * yPos;
-				float pupilCenterDistSquare = xPosP * xPosP + yPosP * yPosP;
+		SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
 
-				if (centerDistSquare >= irisRadiusSquare) {
-					floatMap.setSamples(x, y, 0, 0);
-				}
-				else if (pupilCenterDistSquare == 0) {
-					floatMap.setSamples(x, y, -xPos / OVERLAY_SIZE, -yPos / OVERLAY_SIZE);
-				}
-				else {
-					// Determine corresponding iris boundary point via quadratic equation
-					float plusMinusTerm = (float) Math.sqrt(2 * xPosP * yPosP * pupilXCenter * pupilYCenter
-							+ irisRadius * irisRadius * pupilCenterDistSquare
-							- (pupilXCenter * pupilXCenter * yPosP * yPosP)
-							- (pupilYCenter * pupilYCenter * xPosP * xPosP));
-
-					float xBound = (yPosP * yPosP * pupilXCenter - yPosP * xPosP * pupilYCenter + xPosP * plusMinusTerm) / pupilCenterDistSquare;
-					float yBound = (xPosP * xPosP * pupilYCenter - xPosP * yPosP * pupilXCenter + yPosP * plusMinusTerm) / pupilCenterDistSquare;
-
-					// distance of the current point from the center - 1 corresponds to iris boundary
-					float relativeDistance = (float) Math.sqrt(pupilCenterDistSquare
-							/ ((xBound - pupilXCenter) * (xBound - pupilXCenter) + (yBound - pupilYCenter) * (yBound - pupilYCenter)));
-
-					float sourceRelativeDistance = linTransM * relativeDistance + linTransB;
-					if (relativeDistance < pupilSize) {
-						sourceRelativeDistance -= linTransB * Math.pow(1 - relativeDistance / pupilSize, 1.1f); // MAGIC_NUMBER
-					}
+		Image result = canvas.snapshot(parameters, null);
+		OVERLAY_CACHE.put(key, result);
+		return result;
+	}
 
-					float sourceX = xBound * sourceRelativeDistance;
-					float sourceY = yBound * sourceRelativeDistance;
+	/**
+	 * Calculate the displacement map for warping an overlay due to pupil size and position. Each point inside the
+	 * iris is mapped along the ray from the pupil center to the iris boundary.
+	 *
+	 * <p>The rows are calculated in parallel. Only the points inside the iris, as given by the precomputed iris spans,
+	 * are calculated - the displacement of the other points is zero.
+	 *
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 * @return The displacement map, as x and y displacement for each pixel, line by line.
+	 */
+	static float[] getOverlayDisplacement(final int overlayType, final float pupilXOffset, final float pupilYOffset,
+			final float pupilSize) {
+		final int overlayHalfSize = OVERLAY_SIZE / 2;
+		final int irisRadius = (int) (OVERLAY_CIRCLE_RATIO * overlayHalfSize);
+		final float pupilXCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilXOffset / (1 - pupilSize);
+		final float pupilYCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilYOffset / (1 - pupilSize);
+		float origPupilSize = ORIG_PUPIL_SIZES[overlayType];
+		final float linTransM = pupilSize == 1 ? 0 : (1 - origPupilSize) / (1 - pupilSize);
+		final float linTransB = 1 - linTransM;
+
+		final float[] displacement = new float[2 * OVERLAY_SIZE * OVERLAY_SIZE];
+		processInRowBands(OVERLAY_SIZE, new RowBandProcessor() {
+			@Override
+			public void processRows(final int startRow, final int endRow) {
+				for (int y = startRow; y < endRow; y++) {
+					int yPos = y - overlayHalfSize;
+					float yPosP = yPos - pupilYCenter;
+
+					for (int x = IRIS_SPAN_START[y]; x < IRIS_SPAN_END[y]; x++) {
+						int xPos = x - overlayHalfSize;
+						float xPosP = xPos - pupilXCenter;
+						int index = 2 * (y * OVERLAY_SIZE + x);
+
+						float pupilCenterDistSquare = xPosP * xPosP + yPosP * yPosP;
+
+						if (pupilCenterDistSquare == 0) {
+							displacement[index] = -xPos / OVERLAY_SIZE;
+							displacement[index + 1] = -yPos / OVERLAY_SIZE;
+							continue;
+						}
+
+						// Determine corresponding iris boundary point via quadratic equation
+						float plusMinusTerm = (float) Math.sqrt(2 * xPosP * yPosP * pupilXCenter * pupilYCenter
+								+ irisRadius * irisRadius * pupilCenterDistSquare
+								- (pupilXCenter * pupilXCenter * yPosP * yPosP)
+								- (pupilYCenter * pupilYCenter * xPosP * xPosP));
+
+						// The boundary point is pupilCenter + boundFactor * (point - pupilCenter), so that the distance
+						// of the current point from the center relative to the boundary is 1 / boundFactor.
+						float boundFactor = (plusMinusTerm - xPosP * pupilXCenter - yPosP * pupilYCenter) / pupilCenterDistSquare;
+						float xBound = pupilXCenter + boundFactor * xPosP;
+						float yBound = pupilYCenter + boundFactor * yPosP;
+						float relativeDistance = 1 / boundFactor;
+
+						float sourceRelativeDistance = linTransM * relativeDistance + linTransB;
+						if (relativeDistance < pupilSize) {
+							sourceRelativeDistance -= linTransB * Math.pow(1 - relativeDistance / pupilSize, 1.1f); // MAGIC_NUMBER
+						}
+
+						float sourceX = xBound * sourceRelativeDistance;
+						float sourceY = yBound * sourceRelativeDistance;
+
+						displacement[index] = (sourceX - xPos) / OVERLAY_SIZE;
+						displacement[index + 1] = (sourceY - yPos) / OVERLAY_SIZE;
+					}
+				}
+			}
+		});
+		return displacement;
+	}
 
-					floatMap.setSamples(x, y, (sourceX - xPos) / OVERLAY_SIZE, (sourceY - yPos) / OVERLAY_SIZE);
+	/**
+	 * Process the rows of an image in parallel bands, one band per processor. Returns when all rows are processed.
+	 *
+	 * @param height
+	 *            The number of rows.
+	 * @param processor
+	 *            The processor of the rows.
+	 */
+	static void processInRowBands(final int height, final RowBandProcessor processor) {
+		int bandCount = Math.min(PROCESSOR_COUNT, height);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int band = 1; band < bandCount; band++) {
+			final int startRow = height * band / bandCount;
+			final int endRow = height * (band + 1) / bandCount;
+			futures.add(ROW_BAND_EXECUTOR.submit(new Runnable() {
+				@Override
+				public void run() {
+					processor.processRows(startRow, endRow);
 				}
+			}));
+		}
+
+		// The first band is processed in the current thread.
+		processor.processRows(0, height / bandCount);
 
+		try {
+			for (Future<?> future : futures) {
+				future.get();
 			}
 		}
-		DisplacementMap displacementMap = new DisplacementMap(floatMap);
-		canvas.getGraphicsContext2D().setEffect(displacementMap);
-		canvas.getGraphicsContext2D().drawImage(originalImage, 0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
-
-		SnapshotParameters parameters = new SnapshotParameters();
-		parameters.setFill(Color.TRANSPARENT);
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while processing image", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to process image", e.getCause());
+		}
+	}
 
-		mCachedOverlay = canvas.snapshot(parameters, null);
-		mCachedOverlayType = overlayType;
-		mCachedOverlaySide = side;
-		mCachedOverlayColor = color;
-		mCachedPupilSize = pupilSize;
-		mCachedPupilXOffset = pupilXOffset;
-		mCachedPupilYOffset = pupilYOffset;
-		return mCachedOverlay;
+	/**
+	 * Processor of a band of image rows.
+	 */
+	interface RowBandProcessor {
+		/**
+		 * Process the rows of a band.
+		 *
+		 * @param startRow
+		 *            The first row of the band.
+		 * @param endRow
+		 *            The row after the band.
+		 */
+		void processRows(int startRow, int endRow);
 	}
 
 	/**
@@ -417,33 +624,14 @@ public final class ImageUtil {
 			gc.drawImage(baseImage, 0, 0, width, height);
 		}
 		else {
-			Color temperatureColor = convertTemperatureToColor(colorTemperature);
-			float factorBlue = 1 / (float) temperatureColor.getBlue();
-			float factorGreen = 1 / (float) temperatureColor.getGreen();
-			float factorRed = 1 / (float) temperatureColor.getRed();
-			float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
-			factorBlue *= correctionFactor * contrast;
-			factorGreen *= correctionFactor * contrast;
-			factorRed *= correctionFactor * contrast;
-			float offset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
-			float oppositeSaturation = (1 - saturation) / 2;
-
 			WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
-			byte[] buffer = new byte[FOUR * width * height];
+			byte[] buffer = ColorAdjustment.obtainBuffer(FOUR * width * height);
 
 			baseImage.getPixelReader().getPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
-
-			for (int i = 0; i < buffer.length; i += FOUR) {
-				float blueIn = (buffer[i] & BYTE) * factorBlue;
-				float greenIn = (buffer[i + 1] & BYTE) * factorGreen;
-				float redIn = (buffer[i + 2] & BYTE) * factorRed;
-
-				buffer[i] = toColorByte(saturation * blueIn + oppositeSaturation * greenIn + oppositeSaturation * redIn + offset);
-				buffer[i + 1] = toColorByte(oppositeSaturation * blueIn + saturation * greenIn + oppositeSaturation * redIn + offset);
-				buffer[i + 2] = toColorByte(oppositeSaturation * blueIn + oppositeSaturation * greenIn + saturation * redIn + offset);
-			}
-
+			new ColorAdjustment(brightness, contrast, saturation, colorTemperature).apply(buffer, width, height);
 			gc.getPixelWriter().setPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
+
+			ColorAdjustment.releaseBuffer(buffer);
 		}
 
 		if (overlayType != null) {
@@ -470,35 +658,73 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Convert a number into a byte (ensuring the appropriate range).
+	 * Get an eye photo image with a displayed overlay, positioned via the metadata.
 	 *
-	 * @param number The number.
-	 * @return The resulting byte.
+	 * @param eyePhoto
+	 *            The eye photo image.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @return The image with overlay.
 	 */
-	private static byte toColorByte(final float number) {
-		return (byte) Math.min(BYTE, Math.max(0, number));
+	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+			final Integer overlayType, final Color color, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature, final Resolution resolution) {
+		return getImageForDisplay(eyePhoto, eyePhoto.getImage(resolution), overlayType, color,
+				brightness, contrast, saturation, colorTemperature, resolution);
 	}
 
 	/**
-	 * Convert a temperature into a color value representing the color of this temperature.
+	 * Get an eye photo image with a displayed overlay, positioned via the metadata, based on an already loaded image.
 	 *
-	 * @param temperature The temperature value (in the range -1..1).
-	 * @return The color value.
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param image
+	 *            The image of the eye photo in the given resolution.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @return The image with overlay.
 	 */
-	private static Color convertTemperatureToColor(final double temperature) {
-		if (temperature >= 0) {
-			return Color.rgb((int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE); // MAGIC_NUMBER
-		}
-		else {
-			return Color.rgb(BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)); // MAGIC_NUMBER
-		}
+	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+			final Image image, final Integer overlayType, final Color color, final float brightness,
+			final float contrast, final float saturation, final float colorTemperature, final Resolution resolution) {
+		return getImageForDisplay(image, eyePhoto.getImageMetadata(), eyePhoto.getRightLeft(), overlayType, color,
+				brightness, contrast, saturation, colorTemperature, resolution);
 	}
 
 	/**
-	 * Get an eye photo image with a displayed overlay, positioned via the metadata.
+	 * Get an image with a displayed overlay, positioned via given metadata. In contrast to the methods based on an
+	 * EyePhoto, the metadata is not read from the file.
 	 *
-	 * @param eyePhoto
-	 *            The eye photo image.
+	 * @param image
+	 *            The image in the given resolution.
+	 * @param metadata
+	 *            The metadata of the image.
+	 * @param side
+	 *            The side of the eye.
 	 * @param overlayType
 	 *            The overlay type.
 	 * @param color
@@ -515,34 +741,207 @@ public final class ImageUtil {
 	 *            Indicator of the resolution of the image.
 	 * @return The image with overlay.
 	 */
-	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
-			final Integer overlayType, final Color color, final float brightness, final float contrast,
-			final float saturation, final float colorTemperature, final Resolution resolution) {
-		Image image = eyePhoto.getImage(resolution);
-		JpegMetadata metadata = eyePhoto.getImageMetadata();
+	public static Image getImageForDisplay(final Image image, // SUPPRESS_CHECKSTYLE Too many parameters
+			final JpegMetadata metadata, final RightLeft side, final Integer overlayType, final Color color,
+			final float brightness, final float contrast, final float saturation, final float colorTemperature,
+			final Resolution resolution) {
 		if (resolution == Resolution.FULL) {
 			// Full resolution does not allow use of Canvas to set brightness, contrast and overlay.
+			// Color adjustment is done by OverlayImageView for the visible tiles only.
 			return image;
 		}
 		else if (metadata != null && metadata.hasOverlayPosition() && overlayType != null) {
 			if (metadata.getPupilSize() == null) {
-				return ImageUtil.getImageWithOverlay(image, overlayType, eyePhoto.getRightLeft(), color,
+				return ImageUtil.getImageWithOverlay(image, overlayType, side, color,
 						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor(),
 						0, 0, 0.25f, brightness, contrast, saturation, colorTemperature, resolution); // MAGIC_NUMBER
 			}
 			else {
-				return ImageUtil.getImageWithOverlay(image, overlayType, eyePhoto.getRightLeft(), color,
+				return ImageUtil.getImageWithOverlay(image, overlayType, side, color,
 						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor(),
 						metadata.getPupilXOffset(), metadata.getPupilYOffset(), metadata.getPupilSize(),
 						brightness, contrast, saturation, colorTemperature, resolution);
 			}
 		}
 		else {
-			return ImageUtil.getImageWithOverlay(image, null, eyePhoto.getRightLeft(), color,
+			return ImageUtil.getImageWithOverlay(image, null, side, color,
 					0, 0, 1, 0, 0, 0.25f, brightness, contrast, saturation, colorTemperature, resolution); // MAGIC_NUMBER
 		}
 	}
 
+	/**
+	 * Decode an image file into pixels, applying the EXIF rotation. In contrast to getImage, this does not require
+	 * the JavaFX toolkit, so that it can be used in headless mode and outside the FX application thread.
+	 *
+	 * @param file The image file.
+	 * @return The image.
+	 * @throws IOException thrown if the file cannot be decoded.
+	 */
+	public static Image decodeImage(final File file) throws IOException {
+		BufferedImage bufferedImage = ImageIO.read(file);
+		if (bufferedImage == null) {
+			throw new IOException("Cannot decode image file " + file.getAbsolutePath());
+		}
+		int width = bufferedImage.getWidth();
+		int height = bufferedImage.getHeight();
+		int[] pixels = ImageDecoder.getArgbPixels(bufferedImage);
+		bufferedImage.flush();
+
+		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+		if (rotation == 0) {
+			return createImage(pixels, width, height);
+		}
+
+		int[] rotatedPixels = rotatePixels(pixels, width, height, rotation);
+		if (rotation == 180) { // MAGIC_NUMBER
+			return createImage(rotatedPixels, width, height);
+		}
+		else {
+			return createImage(rotatedPixels, height, width);
+		}
+	}
+
+	/**
+	 * Rotate an image clockwise by operating on the pixels. In contrast to a rotation via Canvas, this does not require
+	 * the FX application thread.
+	 *
+	 * @param image The image.
+	 * @param rotation The rotation angle (0, 90, 180 or 270).
+	 * @return The rotated image.
+	 */
+	public static Image rotateImage(final Image image, final int rotation) {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		PixelReader pixelReader = image.getPixelReader();
+		int[] rotatedPixels = new int[width * height];
+
+		// Read stripes of rows, so that only one full size pixel array is required.
+		int[] stripe = new int[width * Math.min(ROTATION_BLOCK_SIZE, height)];
+		for (int minY = 0; minY < height; minY += ROTATION_BLOCK_SIZE) {
+			int stripeHeight = Math.min(ROTATION_BLOCK_SIZE, height - minY);
+			pixelReader.getPixels(0, minY, width, stripeHeight, PixelFormat.getIntArgbInstance(), stripe, 0, width);
+			rotatePixels(stripe, width, stripeHeight, rotatedPixels, height, minY, rotation);
+		}
+
+		if (rotation == 90 || rotation == 270) { // MAGIC_NUMBER
+			return createImage(rotatedPixels, height, width);
+		}
+		else {
+			return createImage(rotatedPixels, width, height);
+		}
+	}
+
+	/**
+	 * Rotate an ARGB pixel array clockwise.
+	 *
+	 * @param pixels The pixels.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param rotation The rotation angle (0, 90, 180 or 270).
+	 * @return The rotated pixels.
+	 */
+	private static int[] rotatePixels(final int[] pixels, final int width, final int height, final int rotation) {
+		int[] rotatedPixels = new int[pixels.length];
+		rotatePixels(pixels, width, height, rotatedPixels, height, 0, rotation);
+		return rotatedPixels;
+	}
+
+	/**
+	 * Rotate a stripe of rows of an ARGB pixel array clockwise into the rotated pixel array of the full image. For 90
+	 * and 270 degrees, the pixels are transposed in square blocks, so that reading and writing stay within the CPU
+	 * cache.
+	 *
+	 * @param stripe The pixels of the stripe.
+	 * @param width The width of the image.
+	 * @param stripeHeight The number of rows of the stripe.
+	 * @param rotatedPixels The rotated pixels of the full image.
+	 * @param height The height of the full image.
+	 * @param minY The first row of the stripe within the full image.
+	 * @param rotation The rotation angle (0, 90, 180 or 270).
+	 */
+	private static void rotatePixels(final int[] stripe, final int width, final int stripeHeight, // SUPPRESS_CHECKSTYLE Too many parameters
+			final int[] rotatedPixels, final int height, final int minY, final int rotation) {
+		switch (rotation) {
+		case 90: // MAGIC_NUMBER
+			for (int blockY = 0; blockY < stripeHeight; blockY += ROTATION_BLOCK_SIZE) {
+				int maxY = Math.min(blockY + ROTATION_BLOCK_SIZE, stripeHeight);
+				for (int blockX = 0; blockX < width; blockX += ROTATION_BLOCK_SIZE) {
+					int maxX = Math.min(blockX + ROTATION_BLOCK_SIZE, width);
+					for (int x = blockX; x < maxX; x++) {
+						int targetIndex = x * height + height - 1 - minY - blockY;
+						for (int y = blockY; y < maxY; y++) {
+							rotatedPixels[targetIndex--] = stripe[y * width + x];
+						}
+					}
+				}
+			}
+			break;
+		case 180: // MAGIC_NUMBER
+			int lastIndex = width * height - 1 - minY * width;
+			for (int i = 0; i < width * stripeHeight; i++) {
+				rotatedPixels[lastIndex - i] = stripe[i];
+			}
+			break;
+		case 270: // MAGIC_NUMBER
+			for (int blockY = 0; blockY < stripeHeight; blockY += ROTATION_BLOCK_SIZE) {
+				int maxY = Math.min(blockY + ROTATION_BLOCK_SIZE, stripeHeight);
+				for (int blockX = 0; blockX < width; blockX += ROTATION_BLOCK_SIZE) {
+					int maxX = Math.min(blockX + ROTATION_BLOCK_SIZE, width);
+					for (int x = blockX; x < maxX; x++) {
+						int targetIndex = (width - 1 - x) * height + minY + blockY;
+						for (int y = blockY; y < maxY; y++) {
+							rotatedPixels[targetIndex++] = stripe[y * width + x];
+						}
+					}
+				}
+			}
+			break;
+		default:
+			System.arraycopy(stripe, 0, rotatedPixels, minY * width, width * stripeHeight);
+		}
+	}
+
+	/**
+	 * Create an image from ARGB pixels.
+	 *
+	 * @param pixels The pixels.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @return The image.
+	 */
+	static Image createImage(final int[] pixels, final int width, final int height) {
+		WritableImage image = new WritableImage(width, height);
+		image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		return image;
+	}
+
+	/**
+	 * Convert a decoded AWT image into an image.
+	 *
+	 * @param bufferedImage The AWT image. Its raster data may be modified.
+	 * @return The image.
+	 */
+	static Image createImage(final BufferedImage bufferedImage) {
+		return ImageDecoder.toImage(bufferedImage);
+	}
+
+	/**
+	 * Convert an image into an AWT image without alpha channel, e.g. for encoding it via ImageIO.
+	 *
+	 * @param image The image.
+	 * @return The AWT image.
+	 */
+	static BufferedImage toBufferedImage(final Image image) {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		int[] pixels = new int[width * height];
+		image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+
+		BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		bufferedImage.setRGB(0, 0, width, height, pixels, 0, width);
+		return bufferedImage;
+	}
+
 	/**
 	 * Resize an image to the given size.
 	 *
@@ -574,6 +973,40 @@ public final class ImageUtil {
 		return canvas.snapshot(null, null);
 	}
 
+	/**
+	 * Scale down an image to the given size by averaging the pixels. In contrast to resizeImage, this does not require
+	 * the JavaFX toolkit, so that it can be used in headless mode and outside the FX application thread.
+	 *
+	 * @param baseImage The original image.
+	 * @param targetSize The target size.
+	 * @return the resized image.
+	 */
+	public static Image scaleImage(final Image baseImage, final int targetSize) {
+		if (baseImage == null || baseImage.getWidth() == 0 || baseImage.getHeight() == 0) {
+			return baseImage;
+		}
+		if (baseImage.getWidth() <= targetSize && baseImage.getHeight() <= targetSize) {
+			return baseImage;
+		}
+		int width = (int) baseImage.getWidth();
+		int height = (int) baseImage.getHeight();
+		int targetWidth;
+		int targetHeight;
+		if (width > height) {
+			targetWidth = targetSize;
+			targetHeight = Math.max(1, targetSize * height / width);
+		}
+		else {
+			targetWidth = Math.max(1, targetSize * width / height);
+			targetHeight = targetSize;
+		}
+
+		int[] pixels = new int[width * height];
+		baseImage.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		int[] targetPixels = ArgbRaster.scalePixels(pixels, width, height, targetWidth, targetHeight);
+		return createImage(targetPixels, targetWidth, targetHeight);
+	}
+
 	/**
 	 * Enumeration indicating the resolution with which the image should be displayed.
 	 */
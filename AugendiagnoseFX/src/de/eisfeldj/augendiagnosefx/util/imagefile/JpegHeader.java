@@ -0,0 +1,321 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The marker segments of a JPEG file before the first scan (SOS segment), which contain all metadata. The entropy
+ * coded image data after this header is not read, so that metadata can be retrieved with a small fraction of the file
+ * size being read.
+ */
+final class JpegHeader {
+	/**
+	 * The marker prefix byte.
+	 */
+	private static final int MARKER_PREFIX = 0xFF;
+
+	/**
+	 * Start of image marker.
+	 */
+	private static final int SOI = 0xD8;
+
+	/**
+	 * End of image marker.
+	 */
+	private static final int EOI = 0xD9;
+
+	/**
+	 * Start of scan marker.
+	 */
+	private static final int SOS = 0xDA;
+
+	/**
+	 * The first restart marker (restart markers have no length).
+	 */
+	private static final int RST0 = 0xD0;
+
+	/**
+	 * The last restart marker.
+	 */
+	private static final int RST7 = 0xD7;
+
+	/**
+	 * The temporary marker (has no length).
+	 */
+	private static final int TEM = 0x01;
+
+	/**
+	 * The APP1 marker, used for EXIF and XMP.
+	 */
+	private static final int APP1 = 0xE1;
+
+	/**
+	 * The identifier at the start of an EXIF APP1 segment.
+	 */
+	private static final byte[] EXIF_IDENTIFIER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The identifier at the start of an XMP APP1 segment.
+	 */
+	private static final byte[] XMP_IDENTIFIER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The TIFF tag of the orientation.
+	 */
+	private static final int TAG_ORIENTATION = 0x0112;
+
+	/**
+	 * The size of a TIFF directory entry.
+	 */
+	private static final int TIFF_ENTRY_SIZE = 12;
+
+	/**
+	 * The orientation value of images which are not rotated.
+	 */
+	static final int ORIENTATION_NORMAL = 1;
+
+	/**
+	 * A minimal image data part, consisting of SOS marker and EOI marker, which can be appended to the header so that
+	 * it is accepted as JPEG by metadata writers.
+	 */
+	private static final byte[] MINIMAL_IMAGE_DATA = {(byte) MARKER_PREFIX, (byte) SOS, (byte) MARKER_PREFIX, (byte) EOI};
+
+	/**
+	 * The header bytes, from SOI up to (excluding) the first SOS marker.
+	 */
+	private final byte[] mHeaderBytes;
+
+	/**
+	 * The file offset of the first SOS marker.
+	 */
+	private final long mImageDataOffset;
+
+	/**
+	 * Create a JPEG header.
+	 *
+	 * @param headerBytes
+	 *            The header bytes.
+	 * @param imageDataOffset
+	 *            The file offset of the first SOS marker.
+	 */
+	private JpegHeader(final byte[] headerBytes, final long imageDataOffset) {
+		mHeaderBytes = headerBytes;
+		mImageDataOffset = imageDataOffset;
+	}
+
+	/**
+	 * Read the header of a JPEG file.
+	 *
+	 * @param file
+	 *            The JPEG file.
+	 * @return The header.
+	 * @throws IOException
+	 *             thrown if the file cannot be read or is not a JPEG file.
+	 */
+	static JpegHeader read(final File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			if (input.readUnsignedByte() != MARKER_PREFIX || input.readUnsignedByte() != SOI) {
+				throw new IOException("File " + file.getAbsolutePath() + " is not a JPEG file");
+			}
+			header.write(MARKER_PREFIX);
+			header.write(SOI);
+
+			long position = 2;
+			while (true) {
+				if (input.readUnsignedByte() != MARKER_PREFIX) {
+					throw new IOException("Invalid marker in JPEG file " + file.getAbsolutePath());
+				}
+				long markerPosition = position;
+				int marker = input.readUnsignedByte();
+				position += 2;
+				while (marker == MARKER_PREFIX) {
+					// fill bytes
+					markerPosition++;
+					marker = input.readUnsignedByte();
+					position++;
+				}
+
+				if (marker == SOS || marker == EOI) {
+					return new JpegHeader(header.toByteArray(), markerPosition);
+				}
+
+				header.write(MARKER_PREFIX);
+				header.write(marker);
+				if (marker == TEM || marker >= RST0 && marker <= RST7) {
+					continue;
+				}
+
+				int length = input.readUnsignedShort();
+				header.write(length >> 8); // MAGIC_NUMBER
+				header.write(length & MARKER_PREFIX);
+				byte[] segment = new byte[length - 2];
+				input.readFully(segment);
+				header.write(segment);
+				position += length;
+			}
+		}
+		catch (EOFException e) {
+			throw new IOException("Unexpected end of JPEG file " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Get the file offset of the first SOS marker, i.e. the start of the part of the file which is not contained in
+	 * the header.
+	 *
+	 * @return The file offset.
+	 */
+	long getImageDataOffset() {
+		return mImageDataOffset;
+	}
+
+	/**
+	 * Get the XMP packet of the header.
+	 *
+	 * @return The XMP packet, or null if there is no XMP segment.
+	 */
+	String getXmpPacket() {
+		int segmentStart = findSegment(APP1, XMP_IDENTIFIER);
+		if (segmentStart < 0) {
+			return null;
+		}
+		int dataStart = segmentStart + XMP_IDENTIFIER.length;
+		return new String(mHeaderBytes, dataStart, getSegmentEnd(segmentStart) - dataStart, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get the EXIF orientation value from the first image directory.
+	 *
+	 * @return The orientation value, or ORIENTATION_NORMAL if it is not available.
+	 */
+	int getExifOrientation() {
+		int segmentStart = findSegment(APP1, EXIF_IDENTIFIER);
+		if (segmentStart < 0) {
+			return ORIENTATION_NORMAL;
+		}
+		int tiffStart = segmentStart + EXIF_IDENTIFIER.length;
+		int segmentEnd = getSegmentEnd(segmentStart);
+		if (segmentEnd - tiffStart < 8) { // MAGIC_NUMBER
+			return ORIENTATION_NORMAL;
+		}
+
+		// The TIFF structure starts with the byte order ("II" or "MM") and the offset of the first directory.
+		ByteBuffer tiff = ByteBuffer.wrap(mHeaderBytes, tiffStart, segmentEnd - tiffStart).slice();
+		tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		int directoryOffset = tiff.getInt(4); // MAGIC_NUMBER
+		if (directoryOffset < 0 || directoryOffset + 2 > tiff.limit()) {
+			return ORIENTATION_NORMAL;
+		}
+
+		int entryCount = tiff.getShort(directoryOffset) & 0xFFFF; // MAGIC_NUMBER
+		for (int i = 0; i < entryCount; i++) {
+			int entryOffset = directoryOffset + 2 + i * TIFF_ENTRY_SIZE;
+			if (entryOffset + TIFF_ENTRY_SIZE > tiff.limit()) {
+				break;
+			}
+			if ((tiff.getShort(entryOffset) & 0xFFFF) == TAG_ORIENTATION) { // MAGIC_NUMBER
+				// The value of type SHORT is stored at the start of the value field.
+				return tiff.getShort(entryOffset + 8) & 0xFFFF; // MAGIC_NUMBER
+			}
+		}
+		return ORIENTATION_NORMAL;
+	}
+
+	/**
+	 * Find the first segment with a certain marker whose data starts with a certain identifier.
+	 *
+	 * @param marker
+	 *            The marker.
+	 * @param identifier
+	 *            The identifier.
+	 * @return The position of the identifier in the header bytes, or -1 if there is no such segment.
+	 */
+	private int findSegment(final int marker, final byte[] identifier) {
+		int position = 2;
+		while (position + 4 <= mHeaderBytes.length) { // MAGIC_NUMBER
+			int currentMarker = mHeaderBytes[position + 1] & MARKER_PREFIX;
+			if (currentMarker == TEM || currentMarker >= RST0 && currentMarker <= RST7) {
+				position += 2;
+				continue;
+			}
+			int dataStart = position + 4; // MAGIC_NUMBER
+			if (currentMarker == marker && startsWith(dataStart, identifier)) {
+				return dataStart;
+			}
+			position = getSegmentEnd(dataStart);
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the end of a segment.
+	 *
+	 * @param dataStart
+	 *            The position of the segment data in the header bytes (after marker and length).
+	 * @return The position after the segment.
+	 */
+	private int getSegmentEnd(final int dataStart) {
+		int length = (mHeaderBytes[dataStart - 2] & MARKER_PREFIX) << 8 | mHeaderBytes[dataStart - 1] & MARKER_PREFIX; // MAGIC_NUMBER
+		return Math.min(dataStart - 2 + length, mHeaderBytes.length);
+	}
+
+	/**
+	 * Check if the header bytes contain an identifier at a certain position.
+	 *
+	 * @param position
+	 *            The position.
+	 * @param identifier
+	 *            The identifier.
+	 * @return true if the identifier is found at this position.
+	 */
+	private boolean startsWith(final int position, final byte[] identifier) {
+		if (position + identifier.length > mHeaderBytes.length) {
+			return false;
+		}
+		for (int i = 0; i < identifier.length; i++) {
+			if (mHeaderBytes[position + i] != identifier[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the header as minimal JPEG without image data, which can be processed by metadata readers and writers.
+	 *
+	 * @return The bytes of the minimal JPEG.
+	 */
+	byte[] toMinimalJpeg() {
+		byte[] result = Arrays.copyOf(mHeaderBytes, mHeaderBytes.length + MINIMAL_IMAGE_DATA.length);
+		System.arraycopy(MINIMAL_IMAGE_DATA, 0, result, mHeaderBytes.length, MINIMAL_IMAGE_DATA.length);
+		return result;
+	}
+
+	/**
+	 * Extract the header from a minimal JPEG created via toMinimalJpeg and processed by metadata writers.
+	 *
+	 * @param minimalJpeg
+	 *            The bytes of the minimal JPEG.
+	 * @return The header bytes.
+	 * @throws IOException
+	 *             thrown if the bytes do not end with the minimal image data.
+	 */
+	static byte[] getHeaderBytes(final byte[] minimalJpeg) throws IOException {
+		int headerLength = minimalJpeg.length - MINIMAL_IMAGE_DATA.length;
+		if (headerLength < 2
+				|| !Arrays.equals(Arrays.copyOfRange(minimalJpeg, headerLength, minimalJpeg.length), MINIMAL_IMAGE_DATA)) {
+			throw new IOException("Unexpected structure of rewritten JPEG header");
+		}
+		return Arrays.copyOf(minimalJpeg, headerLength);
+	}
+}
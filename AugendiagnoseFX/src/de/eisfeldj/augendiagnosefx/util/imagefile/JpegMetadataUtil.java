@@ -1,10 +1,11 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
 
 import com.adobe.xmp.XMPException;
@@ -23,13 +24,9 @@ import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
 import org.apache.commons.imaging.formats.tiff.constants.MicrosoftTagConstants;
-import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.imaging.util.IoUtils;
 
 /**
  * Helper clase to retrieve and save metadata in a JPEG file.
@@ -85,33 +82,7 @@ public final class JpegMetadataUtil {
 	 */
 	protected static int getExifOrientation(final File imageFile) {
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
-			TiffImageMetadata tiffImageMetadata = null;
-
-			if (metadata instanceof JpegImageMetadata) {
-				tiffImageMetadata = ((JpegImageMetadata) metadata).getExif();
-			}
-			else if (metadata instanceof TiffImageMetadata) {
-				tiffImageMetadata = (TiffImageMetadata) metadata;
-			}
-			else {
-				return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
-			}
-
-			TiffField field = tiffImageMetadata.findField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-			if (field != null) {
-				return field.getIntValue();
-			}
-			else {
-				TagInfo tagInfo = new TagInfoShort("Orientation", 274, 1, TiffDirectoryType.TIFF_DIRECTORY_IFD0); // MAGIC_NUMBER
-				field = tiffImageMetadata.findField(tagInfo);
-				if (field != null) {
-					return field.getIntValue();
-				}
-				else {
-					return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
-				}
-			}
+			return JpegHeader.read(imageFile).getExifOrientation();
 		}
 		catch (Exception e) {
 			return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
@@ -171,11 +142,8 @@ public final class JpegMetadataUtil {
 	 *             thrown if the metadata cannot be read.
 	 */
 	protected static void checkJpeg(final String jpegImageFileName) throws IOException, ImageReadException {
-		File file = new File(jpegImageFileName);
-		String mimeType = Imaging.getImageInfo(file).getMimeType();
-		if (!"image/jpeg".equals(mimeType)) {
-			throw new IOException("Bad MIME type " + mimeType + " - can handle metadata only for image/jpeg.");
-		}
+		// Reading the header fails if the file is no JPEG file.
+		JpegHeader.read(new File(jpegImageFileName));
 	}
 
 	/**
@@ -190,12 +158,13 @@ public final class JpegMetadataUtil {
 	 *             thrown in case of other errors while reading metadata.
 	 */
 	public static JpegMetadata getMetadata(final String jpegImageFileName) throws ImageReadException, IOException {
-		checkJpeg(jpegImageFileName);
 		JpegMetadata result = new JpegMetadata();
-		final File imageFile = new File(jpegImageFileName);
+
+		// Read only the header - this fails if the file is no JPEG file.
+		final JpegHeader header = JpegHeader.read(new File(jpegImageFileName));
 
 		// Retrieve XMP data
-		String xmpString = Imaging.getXmpXml(imageFile);
+		String xmpString = header.getXmpPacket();
 		XmpHandler parser = new XmpHandler(xmpString);
 
 		// Standard fields are pre-filled with custom data
@@ -242,7 +211,7 @@ public final class JpegMetadataUtil {
 
 		// Retrieve EXIF data
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
+			final IImageMetadata metadata = Imaging.getMetadata(header.toMinimalJpeg());
 
 			TiffImageMetadata tiffImageMetadata = null;
 			if (metadata instanceof JpegImageMetadata) {
@@ -321,11 +290,39 @@ public final class JpegMetadataUtil {
 	public static void changeMetadata(final String jpegImageFileName, final JpegMetadata metadata) throws IOException,
 			ImageReadException, ImageWriteException, XMPException {
 		if (changeJpegAllowed()) {
-			checkJpeg(jpegImageFileName);
-			changeXmpMetadata(jpegImageFileName, metadata);
+			File jpegImageFile = new File(jpegImageFileName);
+			String tempFileName = jpegImageFileName + ".temp";
+			File tempFile = new File(tempFileName);
+
+			verifyTempFile(tempFile);
+
+			// Change the metadata in memory, based on the header only. Reading the header fails if the file is no JPEG.
+			JpegHeader header = JpegHeader.read(jpegImageFile);
+			byte[] jpegBytes = changeXmpMetadata(header.toMinimalJpeg(), metadata);
 
 			if (changeExifAllowed()) {
-				changeExifMetadata(jpegImageFileName, metadata);
+				jpegBytes = changeExifMetadata(jpegBytes, metadata);
+			}
+
+			// Write the new header and copy the image data unchanged.
+			try (FileOutputStream os = new FileOutputStream(tempFile);
+					FileChannel sourceChannel = new FileInputStream(jpegImageFile).getChannel()) {
+				os.write(JpegHeader.getHeaderBytes(jpegBytes));
+
+				FileChannel targetChannel = os.getChannel();
+				long position = header.getImageDataOffset();
+				long size = sourceChannel.size();
+				while (position < size) {
+					position += sourceChannel.transferTo(position, size - position, targetChannel);
+				}
+			}
+			catch (IOException e) {
+				tempFile.delete();
+				throw e;
+			}
+
+			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
+				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
 			}
 		}
 	}
@@ -333,10 +330,11 @@ public final class JpegMetadataUtil {
 	/**
 	 * Change the EXIF metadata.
 	 *
-	 * @param jpegImageFileName
-	 *            the file for which metadata should be changed.
+	 * @param jpegBytes
+	 *            the JPEG for which metadata should be changed (typically without image data).
 	 * @param metadata
 	 *            the new metadata
+	 * @return the JPEG with changed metadata.
 	 * @throws ImageReadException
 	 *             thrown if the metadata cannot be read.
 	 * @throws ImageWriteException
@@ -344,90 +342,69 @@ public final class JpegMetadataUtil {
 	 * @throws IOException
 	 *             thrown in case of other errors while reading metadata.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeExifMetadata(final String jpegImageFileName, final JpegMetadata metadata)
+	private static byte[] changeExifMetadata(final byte[] jpegBytes, final JpegMetadata metadata)
 			throws IOException, ImageReadException, ImageWriteException {
-		File jpegImageFile = new File(jpegImageFileName);
-		String tempFileName = jpegImageFileName + ".temp";
-		File tempFile = new File(tempFileName);
-
-		verifyTempFile(tempFile);
-
-		OutputStream os = null;
-		try {
-			TiffOutputSet outputSet = null;
-
-			// note that metadata might be null if no metadata is found.
-			final IImageMetadata imageMetadata = Imaging.getMetadata(jpegImageFile);
-			final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-			if (jpegMetadata != null) {
-				// note that exif might be null if no Exif metadata is found.
-				final TiffImageMetadata exif = jpegMetadata.getExif();
+		TiffOutputSet outputSet = null;
 
-				if (exif != null) {
-					outputSet = exif.getOutputSet();
-				}
-			}
+		// note that metadata might be null if no metadata is found.
+		final IImageMetadata imageMetadata = Imaging.getMetadata(jpegBytes);
+		final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
+		if (jpegMetadata != null) {
+			// note that exif might be null if no Exif metadata is found.
+			final TiffImageMetadata exif = jpegMetadata.getExif();
 
-			if (outputSet == null) {
-				outputSet = new TiffOutputSet();
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
 			}
+		}
 
-			final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
-			final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
 
-			if (metadata.getTitle() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
+		final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
 
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
-			}
+		if (metadata.getTitle() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
 
-			if (metadata.getComment() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
-				exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-				exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
-			}
-
-			if (metadata.getSubject() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
-			}
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
+		}
 
-			try {
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-				new ExifRewriter().updateExifMetadataLossless(jpegImageFile, os, outputSet);
-			}
-			catch (Exception e) {
-				Logger.warning("Error storing EXIF data lossless - try lossy approach");
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-				new ExifRewriter().updateExifMetadataLossy(jpegImageFile, os, outputSet);
-			}
+		if (metadata.getComment() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+		}
 
-			IoUtils.closeQuietly(true, os);
+		if (metadata.getSubject() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+		}
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
-			}
+		ByteArrayOutputStream os = new ByteArrayOutputStream(jpegBytes.length);
+		try {
+			new ExifRewriter().updateExifMetadataLossless(jpegBytes, os, outputSet);
 		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		catch (Exception e) {
+			Logger.warning("Error storing EXIF data lossless - try lossy approach");
+			os.reset();
+			new ExifRewriter().updateExifMetadataLossy(jpegBytes, os, outputSet);
 		}
-
+		return os.toByteArray();
 	}
 
 	/**
 	 * Change the XMP metadata.
 	 *
-	 * @param jpegImageFileName
-	 *            the file for which metadata should be changed.
+	 * @param jpegBytes
+	 *            the JPEG for which metadata should be changed (typically without image data).
 	 * @param metadata
 	 *            the new metadata.
-	 *
+	 * @return the JPEG with changed metadata.
 	 * @throws ImageReadException
 	 *             thrown if the metadata cannot be read.
 	 * @throws ImageWriteException
@@ -437,68 +414,48 @@ public final class JpegMetadataUtil {
 	 * @throws XMPException
 	 *             thrown in case of issues with XML handling.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeXmpMetadata(final String jpegImageFileName, final JpegMetadata metadata)
+	private static byte[] changeXmpMetadata(final byte[] jpegBytes, final JpegMetadata metadata)
 			throws IOException, ImageReadException, ImageWriteException, XMPException {
-		File jpegImageFile = new File(jpegImageFileName);
-		String tempFileName = jpegImageFileName + ".temp";
-		File tempFile = new File(tempFileName);
-
-		verifyTempFile(tempFile);
+		final String xmpString = Imaging.getXmpXml(jpegBytes);
 
-		OutputStream os = null;
-		try {
-			final String xmpString = Imaging.getXmpXml(jpegImageFile);
-
-			XmpHandler parser = new XmpHandler(xmpString);
-
-			if (changeExifAllowed()) {
-				// Change standard fields only if EXIF allowed
-				parser.setDcTitle(metadata.getTitle());
-				parser.setDcDescription(metadata.getDescription());
-				parser.setDcSubject(metadata.getSubject());
-				parser.setUserComment(metadata.getComment());
-				parser.setMicrosoftPerson(metadata.getPerson());
-			}
-
-			parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
-			parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
-			parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
-			parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
-			parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
-
-			parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
-			parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
-			parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
-			parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
-			parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
-			parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
-			parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
-			parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
-			parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
-			parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
-			parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
-			parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
-
-			os = new FileOutputStream(tempFile);
-			os = new BufferedOutputStream(os);
-
-			new JpegXmpRewriter().updateXmpXml(jpegImageFile, os, parser.getXmpString());
-
-			IoUtils.closeQuietly(true, os);
+		XmpHandler parser = new XmpHandler(xmpString);
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
-			}
-		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		if (changeExifAllowed()) {
+			// Change standard fields only if EXIF allowed
+			parser.setDcTitle(metadata.getTitle());
+			parser.setDcDescription(metadata.getDescription());
+			parser.setDcSubject(metadata.getSubject());
+			parser.setUserComment(metadata.getComment());
+			parser.setMicrosoftPerson(metadata.getPerson());
 		}
+
+		parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
+		parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
+		parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
+
+		parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
+		parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
+		parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
+		parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
+		parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
+		parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
+		parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
+		parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
+		parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
+		parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
+		parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
+		parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream(jpegBytes.length);
+		new JpegXmpRewriter().updateXmpXml(jpegBytes, os, parser.getXmpString());
+		return os.toByteArray();
 	}
 
 	/**
@@ -1,6 +1,13 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.eisfeldj.augendiagnosefx.controller.MainController;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil;
@@ -12,8 +19,26 @@ import javafx.application.Platform;
 /**
  * Utility class to help storing metadata in jpg files in a synchronized way, preventing to store the same file twice in
  * parallel.
+ *
+ * <p>Metadata is stored in background by a fixed number of saver threads. Save requests on the same file are
+ * coalesced: a request is executed only after a short settle delay, and further requests within this delay replace
+ * it, so that rapid changes (e.g. dragging sliders) lead to a single write.
  */
 public final class JpegSynchronizationUtil {
+	/**
+	 * The number of saver threads.
+	 */
+	private static final int SAVER_THREAD_COUNT = 2;
+
+	/**
+	 * The delay after a save request before the file is written (in milliseconds).
+	 */
+	private static final long SETTLE_DELAY = 500;
+
+	/**
+	 * The number of nanoseconds per millisecond.
+	 */
+	private static final long NANOS_PER_MILLI = 1000000;
 
 	/**
 	 * Hide default constructor.
@@ -22,19 +47,66 @@ public final class JpegSynchronizationUtil {
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * The executor writing the files.
+	 */
+	private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+	static {
+		EXECUTOR = new ScheduledThreadPoolExecutor(SAVER_THREAD_COUNT, new ThreadFactory() {
+			/**
+			 * The number of created threads.
+			 */
+			private final AtomicInteger mThreadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(runnable, "JpegSaver-" + mThreadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		EXECUTOR.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * The lock for the save requests and statistics.
+	 */
+	private static final Object LOCK = new Object();
+
 	/**
 	 * Storage for currently running save tasks.
 	 */
 	private static HashMap<String, JpegMetadata> mRunningSaveRequests = new HashMap<>();
 	/**
-	 * Storage for queued save tasks.
+	 * Storage for save requests waiting for execution.
+	 */
+	private static HashMap<String, SaveRequest> mQueuedSaveRequests = new HashMap<>();
+
+	/**
+	 * Flag indicating if pending save requests are flushed, so that they are executed without settle delay.
+	 */
+	private static boolean mIsFlushing = false;
+
+	/**
+	 * The number of files written.
 	 */
-	private static HashMap<String, JpegMetadata> mQueuedSaveRequests = new HashMap<>();
+	private static long mWriteCount = 0;
+
+	/**
+	 * The total duration of writing files (in nanoseconds).
+	 */
+	private static long mTotalWriteTime = 0;
+
+	/**
+	 * The maximum duration of writing a file (in nanoseconds).
+	 */
+	private static long mMaxWriteTime = 0;
 
 	/**
 	 * This method handles a request to retrieve metadata for a file. If there is no running async task to update
-	 * metadata for this file, then the data is taken directly from the file. Otherwise, it is taken from the last
-	 * metadata to be stored for this file.
+	 * metadata for this file, then the data is taken from the metadata cache, or directly from the file if the
+	 * cache has no up-to-date record. Otherwise, it is taken from the last metadata to be stored for this file.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
@@ -43,17 +115,9 @@ public final class JpegSynchronizationUtil {
 	public static JpegMetadata getJpegMetadata(final String pathname) {
 		JpegMetadata cachedMetadata = null;
 
-		try {
-			JpegMetadataUtil.checkJpeg(pathname);
-		}
-		catch (Exception e) {
-			Logger.warning(e.getMessage());
-			return null;
-		}
-
-		synchronized (JpegSynchronizationUtil.class) {
+		synchronized (LOCK) {
 			if (mQueuedSaveRequests.containsKey(pathname)) {
-				cachedMetadata = mQueuedSaveRequests.get(pathname);
+				cachedMetadata = mQueuedSaveRequests.get(pathname).mMetadata;
 			}
 			else if (mRunningSaveRequests.containsKey(pathname)) {
 				cachedMetadata = mRunningSaveRequests.get(pathname);
@@ -64,20 +128,42 @@ public final class JpegSynchronizationUtil {
 			Logger.info("Retrieve cached metadata for file " + pathname);
 			return cachedMetadata;
 		}
-		else {
-			try {
-				return JpegMetadataUtil.getMetadata(pathname);
-			}
-			catch (Exception e) {
-				Logger.error("Failed to retrieve metadata for file " + pathname, e);
-				return new JpegMetadata();
+
+		File file = new File(pathname);
+		JpegMetadata storedMetadata = MetadataCache.getMetadata(file);
+		if (storedMetadata != null) {
+			return storedMetadata;
+		}
+
+		try {
+			JpegMetadataUtil.checkJpeg(pathname);
+		}
+		catch (Exception e) {
+			Logger.warning(e.getMessage());
+			return null;
+		}
+
+		try {
+			// Take the file state before parsing, so that a file changed meanwhile is not cached with old metadata.
+			long lastModified = file.lastModified();
+			long size = file.length();
+			JpegMetadata metadata = JpegMetadataUtil.getMetadata(pathname);
+			synchronized (LOCK) {
+				if (!mQueuedSaveRequests.containsKey(pathname) && !mRunningSaveRequests.containsKey(pathname)) {
+					MetadataCache.putMetadata(file, lastModified, size, metadata);
+				}
 			}
+			return metadata;
+		}
+		catch (Exception e) {
+			Logger.error("Failed to retrieve metadata for file " + pathname, e);
+			return new JpegMetadata();
 		}
 	}
 
 	/**
-	 * This method handles a request to update metadata on a file. If no such request on the file is in process, then an
-	 * async task is started to update the metadata. Otherwise, it is put on the queue.
+	 * This method handles a request to update metadata on a file. The file is written in background after the settle
+	 * delay. If there is already a waiting request on this file, then it is replaced, and the delay starts again.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
@@ -93,14 +179,24 @@ public final class JpegSynchronizationUtil {
 			return;
 		}
 
-		synchronized (JpegSynchronizationUtil.class) {
-			MainController.setSaveIconVisibility(true);
+		MainController.setSaveIconVisibility(true);
 
-			if (mRunningSaveRequests.containsKey(pathname)) {
-				mQueuedSaveRequests.put(pathname, metadata);
+		synchronized (LOCK) {
+			SaveRequest request = mQueuedSaveRequests.get(pathname);
+			if (request == null) {
+				request = new SaveRequest(pathname, metadata);
+				mQueuedSaveRequests.put(pathname, request);
 			}
 			else {
-				triggerJpegSaverTask(pathname, metadata);
+				request.mMetadata = metadata;
+				if (request.mFuture != null && !request.mFuture.cancel(false)) {
+					// Already started - it will execute this request when finished.
+					return;
+				}
+			}
+
+			if (!mRunningSaveRequests.containsKey(pathname)) {
+				request.schedule(mIsFlushing ? 0 : SETTLE_DELAY);
 			}
 		}
 	}
@@ -111,23 +207,113 @@ public final class JpegSynchronizationUtil {
 	 * @return true if there is a running or pending save request.
 	 */
 	public static boolean hasRunningSaveRequests() {
-		return mRunningSaveRequests.size() > 0 || mQueuedSaveRequests.size() > 0;
+		synchronized (LOCK) {
+			return mRunningSaveRequests.size() > 0 || mQueuedSaveRequests.size() > 0;
+		}
 	}
 
 	/**
-	 * Do cleanup from the last JpegSaverThread and trigger the next task on the same file, if existing.
+	 * Execute all pending save requests without further delay, and wait until all save requests are finished. To be
+	 * called before exiting the application.
+	 *
+	 * @param timeout
+	 *            The maximum waiting time (in milliseconds).
+	 * @return true if all save requests are finished.
+	 */
+	public static boolean flushSaveRequests(final long timeout) {
+		long endTime = System.currentTimeMillis() + timeout;
+		synchronized (LOCK) {
+			mIsFlushing = true;
+			for (SaveRequest request : new ArrayList<>(mQueuedSaveRequests.values())) {
+				if (!mRunningSaveRequests.containsKey(request.mPathname)
+						&& request.mFuture != null && request.mFuture.cancel(false)) {
+					request.schedule(0);
+				}
+			}
+
+			try {
+				while (hasRunningSaveRequests()) {
+					long remainingTime = endTime - System.currentTimeMillis();
+					if (remainingTime <= 0) {
+						return false;
+					}
+					LOCK.wait(remainingTime);
+				}
+				return true;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			finally {
+				mIsFlushing = false;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of files waiting to be written.
+	 *
+	 * @return The number of waiting save requests.
+	 */
+	public static int getQueueSize() {
+		synchronized (LOCK) {
+			return mQueuedSaveRequests.size();
+		}
+	}
+
+	/**
+	 * Get the number of files written since application start.
+	 *
+	 * @return The number of written files.
+	 */
+	public static long getWriteCount() {
+		synchronized (LOCK) {
+			return mWriteCount;
+		}
+	}
+
+	/**
+	 * Get the average duration of writing a file.
+	 *
+	 * @return The average duration in milliseconds.
+	 */
+	public static long getAverageWriteTime() {
+		synchronized (LOCK) {
+			return mWriteCount == 0 ? 0 : mTotalWriteTime / mWriteCount / NANOS_PER_MILLI;
+		}
+	}
+
+	/**
+	 * Get the maximum duration of writing a file.
+	 *
+	 * @return The maximum duration in milliseconds.
+	 */
+	public static long getMaxWriteTime() {
+		synchronized (LOCK) {
+			return mMaxWriteTime / NANOS_PER_MILLI;
+		}
+	}
+
+	/**
+	 * Do cleanup after writing a file, and schedule the next request on the same file, if existing.
 	 *
 	 * @param pathname
 	 *            The path of the jpg file.
+	 * @param writeTime
+	 *            The duration of writing the file (in nanoseconds).
 	 */
-	private static void triggerNextFromQueue(final String pathname) {
-		synchronized (JpegSynchronizationUtil.class) {
+	private static void finishSaveRequest(final String pathname, final long writeTime) {
+		synchronized (LOCK) {
 			mRunningSaveRequests.remove(pathname);
-			if (mQueuedSaveRequests.containsKey(pathname)) {
-				Logger.info("Executing queued store request for file " + pathname);
-				JpegMetadata newMetadata = mQueuedSaveRequests.get(pathname);
-				mQueuedSaveRequests.remove(pathname);
-				triggerJpegSaverTask(pathname, newMetadata);
+			mWriteCount++;
+			mTotalWriteTime += writeTime;
+			mMaxWriteTime = Math.max(mMaxWriteTime, writeTime);
+
+			SaveRequest nextRequest = mQueuedSaveRequests.get(pathname);
+			if (nextRequest != null) {
+				Logger.info("Scheduling queued store request for file " + pathname);
+				nextRequest.schedule(mIsFlushing ? 0 : SETTLE_DELAY);
 			}
 			if (!hasRunningSaveRequests()) {
 				Platform.runLater(new Runnable() {
@@ -137,62 +323,72 @@ public final class JpegSynchronizationUtil {
 					}
 				});
 			}
+			LOCK.notifyAll();
 		}
 	}
 
 	/**
-	 * Utility method to start the JpegSaverThread so save a jpg file with metadata.
-	 *
-	 * @param pathname
-	 *            the path of the jpg file.
-	 * @param metadata
-	 *            the metadata.
-	 */
-	private static void triggerJpegSaverTask(final String pathname, final JpegMetadata metadata) {
-		mRunningSaveRequests.put(pathname, metadata);
-		JpegSaverThread thread = new JpegSaverThread(pathname, metadata);
-		thread.start();
-	}
-
-	/**
-	 * Thread to save a JPEG file asynchronously with changed metadata.
+	 * A request to save a JPEG file with changed metadata.
 	 */
-	private static final class JpegSaverThread extends Thread {
+	private static final class SaveRequest implements Runnable {
 		/**
 		 * The path of the jpg file.
 		 */
-		private String mPathname;
+		private final String mPathname;
 		/**
-		 * The changed metadata.
+		 * The changed metadata. Replaced by further requests on the same file.
 		 */
 		private JpegMetadata mMetadata;
+		/**
+		 * The future of the scheduled execution, or null if not yet scheduled.
+		 */
+		private ScheduledFuture<?> mFuture = null;
 
 		/**
-		 * Constructor for the task.
+		 * Constructor for the request.
 		 *
 		 * @param pathname
 		 *            the path of the jpg file.
 		 * @param metadata
 		 *            the metadata.
 		 */
-		private JpegSaverThread(final String pathname, final JpegMetadata metadata) {
+		private SaveRequest(final String pathname, final JpegMetadata metadata) {
 			this.mPathname = pathname;
 			this.mMetadata = metadata;
 		}
 
+		/**
+		 * Schedule the execution of the request. To be called while holding the lock.
+		 *
+		 * @param delay
+		 *            The delay (in milliseconds).
+		 */
+		private void schedule(final long delay) {
+			mFuture = EXECUTOR.schedule(this, delay, TimeUnit.MILLISECONDS);
+		}
+
 		@Override
 		public void run() {
-			Logger.info("Starting thread to save file " + mPathname);
+			JpegMetadata metadata;
+			synchronized (LOCK) {
+				mQueuedSaveRequests.remove(mPathname);
+				metadata = mMetadata;
+				mRunningSaveRequests.put(mPathname, metadata);
+			}
 
+			Logger.info("Starting to save file " + mPathname);
+			long startTime = System.nanoTime();
 			try {
-				JpegMetadataUtil.changeMetadata(mPathname, mMetadata);
+				JpegMetadataUtil.changeMetadata(mPathname, metadata);
+				File file = new File(mPathname);
+				MetadataCache.putMetadata(file, file.lastModified(), file.length(), metadata);
 				Logger.info("Successfully saved file " + mPathname);
 			}
 			catch (Exception e) {
 				Logger.error("Failed to save file " + mPathname, e);
 				DialogUtil.displayError(ResourceConstants.MESSAGE_ERROR_FAILED_TO_STORE_METADATA, mPathname);
 			}
-			triggerNextFromQueue(mPathname);
+			finishSaveRequest(mPathname, System.nanoTime() - startTime);
 		}
 	}
 
@@ -0,0 +1,493 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.SystemUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+
+/**
+ * Persistent cache of the metadata of eye photos, so that the metadata does not need to be parsed from the JPEG files
+ * again after each start of the application. The cache only supports lookup by file - it is not an index for queries
+ * by person or date.
+ *
+ * <p>The cache holds one record per photo with path, modification date, size and all metadata fields. Records are
+ * validated against modification date and size of the photo when accessed, and are replaced incrementally if the
+ * photo has been changed. The records are kept in memory by path.
+ *
+ * <p>On disk, the cache is an append-only file in the cache directory. Each change appends a record, later records
+ * replace earlier records of the same path. The file is compacted when it contains too many outdated records.
+ */
+public final class MetadataCache {
+	/**
+	 * The identifier at the start of the cache file.
+	 */
+	private static final int MAGIC = 0x41434131;
+
+	/**
+	 * The version of the record format. Cache files of other versions are discarded.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Entry type of a photo record.
+	 */
+	private static final byte ENTRY_RECORD = 1;
+
+	/**
+	 * Entry type of the removal of a photo record.
+	 */
+	private static final byte ENTRY_REMOVAL = 2;
+
+	/**
+	 * The minimum number of outdated entries in the cache file before it is compacted.
+	 */
+	private static final int MIN_OUTDATED_ENTRIES = 100;
+
+	/**
+	 * The cache file.
+	 */
+	private static final File CACHE_FILE = new File(SystemUtil.getCacheDir(), "metadata.cache");
+
+	/**
+	 * The executor writing the cache file.
+	 */
+	private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "MetadataCache");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	/**
+	 * The records by path.
+	 */
+	private static final Map<String, CacheRecord> RECORDS = new HashMap<>();
+
+	/**
+	 * Flag indicating if the cache file has been loaded.
+	 */
+	private static boolean mIsLoaded = false;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private MetadataCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the metadata of a photo from the cache.
+	 *
+	 * @param file
+	 *            The photo file.
+	 * @return A copy of the metadata, or null if the cache has no up-to-date record for the photo.
+	 */
+	public static synchronized JpegMetadata getMetadata(final File file) {
+		ensureLoaded();
+		CacheRecord record = RECORDS.get(file.getAbsolutePath());
+		if (record == null) {
+			return null;
+		}
+		if (!record.isUpToDate(file)) {
+			RECORDS.remove(record.mPath);
+			if (!file.exists()) {
+				appendInBackground(null, record.mPath);
+			}
+			return null;
+		}
+		return copy(record.mMetadata);
+	}
+
+	/**
+	 * Store the metadata of a photo in the cache. To be called after the metadata has been read from the photo or
+	 * has been stored in the photo. Modification date and size are those of the file before reading the metadata, or
+	 * after storing it. If the file has been changed since then, the metadata may be outdated and is not stored.
+	 *
+	 * @param file
+	 *            The photo file.
+	 * @param lastModified
+	 *            The modification date of the file containing the metadata.
+	 * @param size
+	 *            The size of the file containing the metadata.
+	 * @param metadata
+	 *            The metadata contained in the photo.
+	 */
+	public static synchronized void putMetadata(final File file, final long lastModified, final long size,
+			final JpegMetadata metadata) {
+		CacheRecord record = new CacheRecord(file.getAbsolutePath(), lastModified, size, copy(metadata));
+		if (!record.isUpToDate(file)) {
+			return;
+		}
+		ensureLoaded();
+		RECORDS.put(record.mPath, record);
+		appendInBackground(record, record.mPath);
+	}
+
+	/**
+	 * Load the cache file, if not yet done.
+	 */
+	private static void ensureLoaded() {
+		if (mIsLoaded) {
+			return;
+		}
+		mIsLoaded = true;
+		if (!CACHE_FILE.exists()) {
+			return;
+		}
+
+		int entryCount = 0;
+		boolean isCorrupt = false;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(CACHE_FILE)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				isCorrupt = true;
+			}
+			else {
+				while (true) {
+					byte entryType;
+					try {
+						entryType = input.readByte();
+					}
+					catch (EOFException e) {
+						break;
+					}
+					if (entryType == ENTRY_RECORD) {
+						CacheRecord record = readRecord(input);
+						RECORDS.put(record.mPath, record);
+					}
+					else if (entryType == ENTRY_REMOVAL) {
+						RECORDS.remove(input.readUTF());
+					}
+					else {
+						throw new IOException("Invalid entry type " + entryType);
+					}
+					entryCount++;
+				}
+			}
+		}
+		catch (IOException e) {
+			// Typically an incomplete last entry. The entries read so far are kept.
+			Logger.warning("Failed to read metadata cache " + CACHE_FILE.getAbsolutePath() + ": " + e);
+			isCorrupt = true;
+		}
+
+		if (isCorrupt || entryCount - RECORDS.size() >= MIN_OUTDATED_ENTRIES && entryCount > 2 * RECORDS.size()) {
+			compactInBackground();
+		}
+	}
+
+	/**
+	 * Append an entry to the cache file in background.
+	 *
+	 * @param record
+	 *            The record to be appended, or null if the removal of a record is appended.
+	 * @param path
+	 *            The path of the photo.
+	 */
+	private static void appendInBackground(final CacheRecord record, final String path) {
+		WRITE_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				boolean isNewFile = !CACHE_FILE.exists();
+				if (isNewFile && !CACHE_FILE.getParentFile().isDirectory() && !CACHE_FILE.getParentFile().mkdirs()) {
+					Logger.warning("Failed to create directory " + CACHE_FILE.getParent());
+					return;
+				}
+				try (DataOutputStream output =
+						new DataOutputStream(new BufferedOutputStream(new FileOutputStream(CACHE_FILE, true)))) {
+					if (isNewFile) {
+						output.writeInt(MAGIC);
+						output.writeInt(VERSION);
+					}
+					if (record == null) {
+						output.writeByte(ENTRY_REMOVAL);
+						output.writeUTF(path);
+					}
+					else {
+						output.writeByte(ENTRY_RECORD);
+						writeRecord(output, record);
+					}
+				}
+				catch (IOException e) {
+					Logger.warning("Failed to write metadata cache " + CACHE_FILE.getAbsolutePath() + ": " + e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Rewrite the cache file in background with the current records only. The file is written under a temporary
+	 * name and renamed afterwards.
+	 */
+	private static void compactInBackground() {
+		final List<CacheRecord> records = new ArrayList<>(RECORDS.values());
+		WRITE_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				File tempFile = new File(CACHE_FILE.getParentFile(), CACHE_FILE.getName() + ".tmp");
+				try {
+					try (DataOutputStream output =
+							new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+						output.writeInt(MAGIC);
+						output.writeInt(VERSION);
+						for (CacheRecord record : records) {
+							output.writeByte(ENTRY_RECORD);
+							writeRecord(output, record);
+						}
+					}
+					Files.move(tempFile.toPath(), CACHE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				catch (IOException e) {
+					Logger.warning("Failed to compact metadata cache " + CACHE_FILE.getAbsolutePath() + ": " + e);
+					tempFile.delete();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write a record.
+	 *
+	 * @param output
+	 *            The target stream.
+	 * @param record
+	 *            The record.
+	 * @throws IOException
+	 *             thrown if the record cannot be written.
+	 */
+	private static void writeRecord(final DataOutputStream output, final CacheRecord record) throws IOException {
+		output.writeUTF(record.mPath);
+		output.writeLong(record.mLastModified);
+		output.writeLong(record.mSize);
+
+		JpegMetadata metadata = record.mMetadata;
+		writeString(output, metadata.getTitle());
+		writeString(output, metadata.getDescription());
+		writeString(output, metadata.getSubject());
+		writeString(output, metadata.getComment());
+		writeString(output, metadata.getPerson());
+		writeFloat(output, metadata.getXCenter());
+		writeFloat(output, metadata.getYCenter());
+		writeFloat(output, metadata.getOverlayScaleFactor());
+		writeFloat(output, metadata.getXPosition());
+		writeFloat(output, metadata.getYPosition());
+		writeFloat(output, metadata.getZoomFactor());
+		writeDate(output, metadata.getOrganizeDate());
+		writeString(output, metadata.getRightLeft() == null ? null : metadata.getRightLeft().name());
+		writeFloat(output, metadata.getBrightness());
+		writeFloat(output, metadata.getContrast());
+		writeFloat(output, metadata.getSaturation());
+		writeFloat(output, metadata.getColorTemperature());
+		writeFloat(output, metadata.getPupilSize());
+		writeFloat(output, metadata.getPupilXOffset());
+		writeFloat(output, metadata.getPupilYOffset());
+		output.writeBoolean(metadata.getOverlayColor() != null);
+		if (metadata.getOverlayColor() != null) {
+			output.writeInt(metadata.getOverlayColor());
+		}
+		output.writeInt(metadata.getFlags());
+	}
+
+	/**
+	 * Read a record.
+	 *
+	 * @param input
+	 *            The source stream.
+	 * @return The record.
+	 * @throws IOException
+	 *             thrown if the record cannot be read.
+	 */
+	private static CacheRecord readRecord(final DataInputStream input) throws IOException {
+		String path = input.readUTF();
+		long lastModified = input.readLong();
+		long size = input.readLong();
+
+		JpegMetadata metadata = new JpegMetadata();
+		metadata.setTitle(readString(input));
+		metadata.setDescription(readString(input));
+		metadata.setSubject(readString(input));
+		metadata.setComment(readString(input));
+		metadata.setPerson(readString(input));
+		metadata.setXCenter(readFloat(input));
+		metadata.setYCenter(readFloat(input));
+		metadata.setOverlayScaleFactor(readFloat(input));
+		metadata.setXPosition(readFloat(input));
+		metadata.setYPosition(readFloat(input));
+		metadata.setZoomFactor(readFloat(input));
+		metadata.setOrganizeDate(readDate(input));
+		metadata.setRightLeft(readRightLeft(input));
+		metadata.setBrightness(readFloat(input));
+		metadata.setContrast(readFloat(input));
+		metadata.setSaturation(readFloat(input));
+		metadata.setColorTemperature(readFloat(input));
+		metadata.setPupilSize(readFloat(input));
+		metadata.setPupilXOffset(readFloat(input));
+		metadata.setPupilYOffset(readFloat(input));
+		metadata.setOverlayColor(input.readBoolean() ? Integer.valueOf(input.readInt()) : null);
+		metadata.setFlags(input.readInt());
+
+		return new CacheRecord(path, lastModified, size, metadata);
+	}
+
+	/**
+	 * Create a copy of metadata, so that changes of the caller do not affect the cache.
+	 *
+	 * @param metadata
+	 *            The metadata.
+	 * @return The copy.
+	 */
+	private static JpegMetadata copy(final JpegMetadata metadata) {
+		JpegMetadata result = new JpegMetadata();
+		result.setTitle(metadata.getTitle());
+		result.setDescription(metadata.getDescription());
+		result.setSubject(metadata.getSubject());
+		result.setComment(metadata.getComment());
+		result.setPerson(metadata.getPerson());
+		result.setXCenter(metadata.getXCenter());
+		result.setYCenter(metadata.getYCenter());
+		result.setOverlayScaleFactor(metadata.getOverlayScaleFactor());
+		result.setXPosition(metadata.getXPosition());
+		result.setYPosition(metadata.getYPosition());
+		result.setZoomFactor(metadata.getZoomFactor());
+		result.setOrganizeDate(metadata.getOrganizeDate() == null ? null : new Date(metadata.getOrganizeDate().getTime()));
+		result.setRightLeft(metadata.getRightLeft());
+		result.setBrightness(metadata.getBrightness());
+		result.setContrast(metadata.getContrast());
+		result.setSaturation(metadata.getSaturation());
+		result.setColorTemperature(metadata.getColorTemperature());
+		result.setPupilSize(metadata.getPupilSize());
+		result.setPupilXOffset(metadata.getPupilXOffset());
+		result.setPupilYOffset(metadata.getPupilYOffset());
+		result.setOverlayColor(metadata.getOverlayColor());
+		result.setFlags(metadata.getFlags());
+		return result;
+	}
+
+	// JAVADOC:OFF
+	// Serialization of nullable values.
+
+	private static void writeString(final DataOutputStream output, final String value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null) {
+			// Not via writeUTF, which is limited to 64 kB.
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static String readString(final DataInputStream input) throws IOException {
+		if (!input.readBoolean()) {
+			return null;
+		}
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeFloat(final DataOutputStream output, final Float value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null) {
+			output.writeFloat(value);
+		}
+	}
+
+	private static Float readFloat(final DataInputStream input) throws IOException {
+		return input.readBoolean() ? Float.valueOf(input.readFloat()) : null;
+	}
+
+	private static void writeDate(final DataOutputStream output, final Date value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null) {
+			output.writeLong(value.getTime());
+		}
+	}
+
+	private static Date readDate(final DataInputStream input) throws IOException {
+		return input.readBoolean() ? new Date(input.readLong()) : null;
+	}
+
+	private static RightLeft readRightLeft(final DataInputStream input) throws IOException {
+		String value = readString(input);
+		return value == null ? null : RightLeft.valueOf(value);
+	}
+
+	// JAVADOC:ON
+
+	/**
+	 * The cache record of a photo.
+	 */
+	private static final class CacheRecord {
+		/**
+		 * The path of the photo.
+		 */
+		private final String mPath;
+
+		/**
+		 * The modification date of the photo.
+		 */
+		private final long mLastModified;
+
+		/**
+		 * The size of the photo file.
+		 */
+		private final long mSize;
+
+		/**
+		 * The metadata stored in the photo.
+		 */
+		private final JpegMetadata mMetadata;
+
+		/**
+		 * Create a record.
+		 *
+		 * @param path
+		 *            The path of the photo.
+		 * @param lastModified
+		 *            The modification date of the photo.
+		 * @param size
+		 *            The size of the photo file.
+		 * @param metadata
+		 *            The metadata stored in the photo.
+		 */
+		private CacheRecord(final String path, final long lastModified, final long size, final JpegMetadata metadata) {
+			mPath = path;
+			mLastModified = lastModified;
+			mSize = size;
+			mMetadata = metadata;
+		}
+
+		/**
+		 * Check if the photo file is unchanged since creating the record.
+		 *
+		 * @param file
+		 *            The photo file.
+		 * @return true if modification date and size are unchanged.
+		 */
+		private boolean isUpToDate(final File file) {
+			return file.lastModified() == mLastModified && file.length() == mSize;
+		}
+	}
+}
@@ -0,0 +1,398 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+
+/**
+ * In-memory index of the person names (i.e. the folder names) in the eye photo folder, allowing search by the start
+ * of a name part without listing the folder.
+ *
+ * <p>The index is a prefix tree over the lower case name parts. Each node holds the names having a name part starting
+ * with the prefix of the node, sorted by collation key, so that a search returns the names in display order. The
+ * index is built once and kept up to date by watching the eye photo folder.
+ */
+public final class PersonNameIndex {
+	/**
+	 * The comparator ordering names by collation key.
+	 */
+	private static final Comparator<IndexEntry> ENTRY_COMPARATOR = new Comparator<IndexEntry>() {
+		@Override
+		public int compare(final IndexEntry lhs, final IndexEntry rhs) {
+			int result = lhs.mCollationKey.compareTo(rhs.mCollationKey);
+			return result != 0 ? result : lhs.mName.compareTo(rhs.mName);
+		}
+	};
+
+	/**
+	 * The folder whose subfolders are indexed.
+	 */
+	private static File mFolder = null;
+
+	/**
+	 * The sort order used for the collation keys.
+	 */
+	private static boolean mSortByLastName;
+
+	/**
+	 * The root node of the prefix tree. It holds all names.
+	 */
+	private static TrieNode mRootNode = null;
+
+	/**
+	 * The index entries by name.
+	 */
+	private static Map<String, IndexEntry> mEntries = new HashMap<>();
+
+	/**
+	 * Flag indicating if the index needs to be rebuilt, as changes of the folder may have been missed.
+	 */
+	private static boolean mIsOutdated = true;
+
+	/**
+	 * The service watching the folder.
+	 */
+	private static WatchService mWatchService = null;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private PersonNameIndex() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the names of the subfolders of a folder having a name part starting with the search string (case
+	 * insensitive), sorted by getFilenameForSorting().
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @param searchString
+	 *            The search string.
+	 * @return The list of names.
+	 */
+	public static synchronized List<String> getNames(final File folder, final String searchString) {
+		boolean sortByLastName = PreferenceUtil.getPreferenceBoolean(PreferenceUtil.KEY_SORT_BY_LAST_NAME);
+		if (mIsOutdated || !folder.equals(mFolder) || sortByLastName != mSortByLastName) {
+			build(folder, sortByLastName);
+		}
+
+		List<String> names = new ArrayList<>();
+		TrieNode node = mRootNode.find(searchString.toLowerCase());
+		if (node != null) {
+			for (IndexEntry entry : node.mEntries) {
+				names.add(entry.mName);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Update the index for a subfolder which has been created or deleted by the application. (Changes of other
+	 * applications are recognized by watching the folder.)
+	 *
+	 * @param name
+	 *            The name of the subfolder.
+	 */
+	public static synchronized void refresh(final String name) {
+		if (mFolder != null) {
+			update(name, new File(mFolder, name).isDirectory());
+		}
+	}
+
+	/**
+	 * Build the index for a folder, and start watching it.
+	 *
+	 * @param folder
+	 *            The folder.
+	 * @param sortByLastName
+	 *            The sort order.
+	 */
+	private static void build(final File folder, final boolean sortByLastName) {
+		mFolder = folder;
+		mSortByLastName = sortByLastName;
+		mRootNode = new TrieNode();
+		mEntries = new HashMap<>();
+		mIsOutdated = false;
+		startWatching(folder.toPath());
+
+		Collator collator = Collator.getInstance();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder.toPath())) {
+			for (Path path : stream) {
+				if (Files.isDirectory(path)) {
+					add(path.getFileName().toString(), collator);
+				}
+			}
+		}
+		catch (IOException e) {
+			Logger.warning("Failed to list folder " + folder.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Add or remove a name.
+	 *
+	 * @param name
+	 *            The name.
+	 * @param exists
+	 *            Flag indicating if the subfolder exists.
+	 */
+	private static void update(final String name, final boolean exists) {
+		if (exists && !mEntries.containsKey(name)) {
+			add(name, Collator.getInstance());
+		}
+		else if (!exists) {
+			IndexEntry entry = mEntries.remove(name);
+			if (entry != null) {
+				for (String part : entry.mParts) {
+					mRootNode.remove(part, 0, entry);
+				}
+				mRootNode.mEntries.remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * Add a name to the index.
+	 *
+	 * @param name
+	 *            The name.
+	 * @param collator
+	 *            The collator for the collation key.
+	 */
+	private static void add(final String name, final Collator collator) {
+		IndexEntry entry = new IndexEntry(name, collator.getCollationKey(getNameForSorting(name, mSortByLastName)));
+		mEntries.put(name, entry);
+		mRootNode.mEntries.add(entry);
+		for (String part : entry.mParts) {
+			mRootNode.add(part, 0, entry);
+		}
+	}
+
+	/**
+	 * Get the name used for sorting.
+	 *
+	 * @param name
+	 *            The name.
+	 * @param sortByLastName
+	 *            Flag indicating if sorting is by last name.
+	 * @return The name for sorting.
+	 */
+	private static String getNameForSorting(final String name, final boolean sortByLastName) {
+		if (sortByLastName) {
+			int index = name.lastIndexOf(' ');
+			if (index >= 0) {
+				String firstName = name.substring(0, index);
+				String lastName = name.substring(index + 1);
+				return lastName + " " + firstName;
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Start watching a folder for created and deleted subfolders, stopping any previous watch.
+	 *
+	 * @param folder
+	 *            The folder.
+	 */
+	private static void startWatching(final Path folder) {
+		if (mWatchService != null) {
+			try {
+				mWatchService.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+			mWatchService = null;
+		}
+
+		final WatchService watchService;
+		try {
+			watchService = folder.getFileSystem().newWatchService();
+			folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+		}
+		catch (IOException | RuntimeException e) {
+			// Without watching, the index is rebuilt on each search.
+			Logger.warning("Cannot watch folder " + folder + ": " + e.getMessage());
+			mIsOutdated = true;
+			return;
+		}
+		mWatchService = watchService;
+
+		Thread watchThread = new Thread("PersonNameIndexWatcher") {
+			@Override
+			public void run() {
+				watch(watchService);
+			}
+		};
+		watchThread.setDaemon(true);
+		watchThread.start();
+	}
+
+	/**
+	 * Process the events of a watch service, until it is closed.
+	 *
+	 * @param watchService
+	 *            The watch service.
+	 */
+	private static void watch(final WatchService watchService) {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				synchronized (PersonNameIndex.class) {
+					if (watchService != mWatchService) {
+						return;
+					}
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							mIsOutdated = true;
+						}
+						else {
+							String name = ((Path) event.context()).getFileName().toString();
+							update(name, new File(mFolder, name).isDirectory());
+						}
+					}
+					if (!key.reset()) {
+						// The folder is not accessible any more.
+						mIsOutdated = true;
+						return;
+					}
+				}
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			// stop watching
+		}
+	}
+
+	/**
+	 * An indexed name.
+	 */
+	private static final class IndexEntry {
+		/**
+		 * The name.
+		 */
+		private final String mName;
+
+		/**
+		 * The lower case parts of the name.
+		 */
+		private final String[] mParts;
+
+		/**
+		 * The collation key of the name for sorting.
+		 */
+		private final CollationKey mCollationKey;
+
+		/**
+		 * Create an index entry.
+		 *
+		 * @param name
+		 *            The name.
+		 * @param collationKey
+		 *            The collation key.
+		 */
+		private IndexEntry(final String name, final CollationKey collationKey) {
+			mName = name;
+			mParts = name.toLowerCase().split(" ");
+			mCollationKey = collationKey;
+		}
+	}
+
+	/**
+	 * A node of the prefix tree.
+	 */
+	private static final class TrieNode {
+		/**
+		 * The child nodes by next character.
+		 */
+		private final Map<Character, TrieNode> mChildren = new HashMap<>();
+
+		/**
+		 * The names having a name part starting with the prefix of this node, sorted by collation key.
+		 */
+		private final TreeSet<IndexEntry> mEntries = new TreeSet<>(ENTRY_COMPARATOR);
+
+		/**
+		 * Find the node of a prefix.
+		 *
+		 * @param prefix
+		 *            The prefix.
+		 * @return The node, or null if no name part starts with the prefix.
+		 */
+		private TrieNode find(final String prefix) {
+			TrieNode node = this;
+			for (int i = 0; i < prefix.length() && node != null; i++) {
+				node = node.mChildren.get(prefix.charAt(i));
+			}
+			return node;
+		}
+
+		/**
+		 * Add an entry below this node for the characters of a name part.
+		 *
+		 * @param part
+		 *            The name part.
+		 * @param index
+		 *            The index of the next character in the name part.
+		 * @param entry
+		 *            The entry.
+		 */
+		private void add(final String part, final int index, final IndexEntry entry) {
+			if (index >= part.length()) {
+				return;
+			}
+			TrieNode child = mChildren.get(part.charAt(index));
+			if (child == null) {
+				child = new TrieNode();
+				mChildren.put(part.charAt(index), child);
+			}
+			child.mEntries.add(entry);
+			child.add(part, index + 1, entry);
+		}
+
+		/**
+		 * Remove an entry below this node for the characters of a name part.
+		 *
+		 * @param part
+		 *            The name part.
+		 * @param index
+		 *            The index of the next character in the name part.
+		 * @param entry
+		 *            The entry.
+		 */
+		private void remove(final String part, final int index, final IndexEntry entry) {
+			if (index >= part.length()) {
+				return;
+			}
+			TrieNode child = mChildren.get(part.charAt(index));
+			if (child == null) {
+				return;
+			}
+			child.mEntries.remove(entry);
+			child.remove(part, index + 1, entry);
+			if (child.mEntries.isEmpty()) {
+				mChildren.remove(part.charAt(index));
+			}
+		}
+	}
+}
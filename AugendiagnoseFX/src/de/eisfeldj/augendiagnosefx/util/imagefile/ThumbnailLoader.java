@@ -0,0 +1,245 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+/**
+ * Service for loading thumbnails of eye photos in background. A limited number of worker threads decodes, scales and
+ * rotates the thumbnails, so that the FX application thread is not blocked.
+ *
+ * <p>Thumbnails of visible rows are loaded first, most recently requested first, so that the rows on screen are
+ * filled quickly while scrolling. Thumbnails of other rows are preloaded afterwards in the order of the list.
+ */
+public final class ThumbnailLoader {
+	/**
+	 * The maximum number of worker threads.
+	 */
+	private static final int MAX_THREAD_COUNT = 4;
+
+	/**
+	 * The time after which idle worker threads are stopped (in seconds).
+	 */
+	private static final long KEEP_ALIVE_TIME = 10;
+
+	/**
+	 * The counter for the order of requests.
+	 */
+	private static final AtomicLong REQUEST_COUNTER = new AtomicLong();
+
+	/**
+	 * The executor loading the thumbnails. As the queue is unbounded, the executor never uses more than the core
+	 * threads.
+	 */
+	private static final ThreadPoolExecutor EXECUTOR;
+
+	static {
+		final int threadCount = Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors());
+		EXECUTOR = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+					/**
+					 * The number of created threads.
+					 */
+					private final AtomicInteger mThreadCount = new AtomicInteger();
+
+					@Override
+					public Thread newThread(final Runnable runnable) {
+						Thread thread = new Thread(runnable, "ThumbnailLoader-" + mThreadCount.incrementAndGet());
+						thread.setDaemon(true);
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ThumbnailLoader() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Request the thumbnail of an eye photo. If the thumbnail is cached, then the listener is called immediately.
+	 * Otherwise, it is called in the FX application thread after the thumbnail has been loaded, or with null if it
+	 * could not be loaded.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param visible
+	 *            flag indicating if the thumbnail is currently visible.
+	 * @param listener
+	 *            The listener receiving the thumbnail.
+	 * @return The request, which can be used to change its priority or to cancel it.
+	 */
+	public static ThumbnailRequest requestThumbnail(final EyePhoto eyePhoto, final boolean visible,
+			final ThumbnailListener listener) {
+		ThumbnailRequest request = new ThumbnailRequest(eyePhoto, visible, listener);
+
+		Image image = ImageCache.get(eyePhoto.getFile(), Resolution.THUMB);
+		if (image == null) {
+			EXECUTOR.execute(request);
+		}
+		else {
+			request.mIsFinished = true;
+			listener.onThumbnailLoaded(image);
+		}
+		return request;
+	}
+
+	/**
+	 * Get the number of thumbnails waiting to be loaded.
+	 *
+	 * @return The number of waiting requests.
+	 */
+	public static int getQueueSize() {
+		return EXECUTOR.getQueue().size();
+	}
+
+	/**
+	 * A request for loading a thumbnail.
+	 */
+	public static final class ThumbnailRequest implements Runnable, Comparable<ThumbnailRequest> {
+		/**
+		 * The eye photo.
+		 */
+		private final EyePhoto mEyePhoto;
+
+		/**
+		 * The listener receiving the thumbnail.
+		 */
+		private final ThumbnailListener mListener;
+
+		/**
+		 * Flag indicating if the thumbnail is visible.
+		 */
+		private volatile boolean mIsVisible;
+
+		/**
+		 * The order of the request. Changes if the request becomes visible.
+		 */
+		private volatile long mSequenceNumber;
+
+		/**
+		 * Flag indicating if the request has been cancelled.
+		 */
+		private volatile boolean mIsCancelled = false;
+
+		/**
+		 * Flag indicating if the thumbnail has been delivered.
+		 */
+		private volatile boolean mIsFinished = false;
+
+		/**
+		 * Create a request.
+		 *
+		 * @param eyePhoto
+		 *            The eye photo.
+		 * @param visible
+		 *            flag indicating if the thumbnail is visible.
+		 * @param listener
+		 *            The listener receiving the thumbnail.
+		 */
+		private ThumbnailRequest(final EyePhoto eyePhoto, final boolean visible, final ThumbnailListener listener) {
+			mEyePhoto = eyePhoto;
+			mIsVisible = visible;
+			mListener = listener;
+			mSequenceNumber = REQUEST_COUNTER.incrementAndGet();
+		}
+
+		/**
+		 * Mark the thumbnail as visible, so that it is loaded before the thumbnails that are not visible.
+		 */
+		public void setVisible() {
+			// Remove and add again, as the queue does not notice changes of priority.
+			if (!mIsVisible && EXECUTOR.remove(this)) {
+				mIsVisible = true;
+				mSequenceNumber = REQUEST_COUNTER.incrementAndGet();
+				EXECUTOR.execute(this);
+			}
+		}
+
+		/**
+		 * Cancel the request. The listener will not be called any more.
+		 */
+		public void cancel() {
+			mIsCancelled = true;
+			EXECUTOR.remove(this);
+		}
+
+		/**
+		 * Check if the thumbnail has been delivered.
+		 *
+		 * @return true if the listener has been called.
+		 */
+		public boolean isFinished() {
+			return mIsFinished;
+		}
+
+		@Override
+		public void run() {
+			if (mIsCancelled) {
+				return;
+			}
+
+			Image loadedImage;
+			try {
+				loadedImage = mEyePhoto.loadImage(Resolution.THUMB);
+			}
+			catch (Exception e) {
+				// Deliver null, so that the request is finished and is not repeated.
+				Logger.error("Failed to load thumbnail of " + mEyePhoto.getAbsolutePath(), e);
+				loadedImage = null;
+			}
+			final Image image = loadedImage;
+
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					if (!mIsCancelled) {
+						mIsFinished = true;
+						mListener.onThumbnailLoaded(image);
+					}
+				}
+			});
+		}
+
+		@Override
+		public int compareTo(final ThumbnailRequest other) {
+			if (mIsVisible != other.mIsVisible) {
+				return mIsVisible ? -1 : 1;
+			}
+			else if (mIsVisible) {
+				// Visible thumbnails: the latest request first.
+				return Long.compare(other.mSequenceNumber, mSequenceNumber);
+			}
+			else {
+				// Preloaded thumbnails: in the order of the list.
+				return Long.compare(mSequenceNumber, other.mSequenceNumber);
+			}
+		}
+	}
+
+	/**
+	 * Listener receiving a loaded thumbnail.
+	 */
+	public interface ThumbnailListener {
+		/**
+		 * Callback method called in the FX application thread when the thumbnail has been loaded.
+		 *
+		 * @param image
+		 *            The thumbnail, or null if it could not be loaded.
+		 */
+		void onThumbnailLoaded(Image image);
+	}
+}
@@ -0,0 +1,324 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.SystemUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.scene.image.Image;
+
+/**
+ * Persistent store of thumbnails in the cache directory, so that thumbnails do not need to be decoded from the full
+ * photo after each start of the application. Thumbnails are stored scaled and rotated, as small JPEG files.
+ *
+ * <p>Each file contains a header with path, modification date and size of the thumbnail, which is validated when the
+ * thumbnail is read. Invalid thumbnails are removed and stored again in background after loading the photo.
+ */
+public final class ThumbnailStore {
+	/**
+	 * The identifier at the start of each thumbnail file.
+	 */
+	private static final int MAGIC = 0x41545331;
+
+	/**
+	 * The file suffix of thumbnail files.
+	 */
+	private static final String SUFFIX = ".thumb";
+
+	/**
+	 * The JPEG quality of the stored thumbnails.
+	 */
+	private static final float JPEG_QUALITY = 0.9f;
+
+	/**
+	 * The maximum number of thumbnails waiting to be stored. Further thumbnails are not stored this time.
+	 */
+	private static final int MAX_PENDING_WRITES = 64;
+
+	/**
+	 * The directory where the thumbnails are stored.
+	 */
+	private static final File STORE_DIR = new File(SystemUtil.getCacheDir(), "thumbnails");
+
+	/**
+	 * The executor storing the thumbnails.
+	 */
+	private static final ThreadPoolExecutor WRITE_EXECUTOR = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES), new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(runnable, "ThumbnailStore");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	/**
+	 * Flag indicating if outdated thumbnails have been cleaned up.
+	 */
+	private static boolean mIsCleanedUp = false;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ThumbnailStore() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Load the thumbnail of an image file in the current thread. The thumbnail is taken from the store if available,
+	 * otherwise it is loaded from the image file and stored in background.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @return The thumbnail.
+	 */
+	public static Image loadThumbnail(final File file) {
+		if (!PreferenceUtil.getPreferenceBoolean(PreferenceUtil.KEY_USE_THUMBNAIL_STORE)) {
+			return ImageUtil.loadImage(file, Resolution.THUMB);
+		}
+		int size = PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE);
+		cleanUpInBackground(size);
+
+		long lastModified = file.lastModified();
+		File storeFile = getStoreFile(file, size);
+
+		Image image = readThumbnail(storeFile, file.getAbsolutePath(), lastModified, size);
+		if (image == null) {
+			image = ImageUtil.loadImage(file, Resolution.THUMB);
+			if (!image.isError()) {
+				storeInBackground(storeFile, file.getAbsolutePath(), lastModified, size, image);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Get the file in which the thumbnail of an image file is stored.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param size
+	 *            The thumbnail size.
+	 * @return The thumbnail file.
+	 */
+	private static File getStoreFile(final File file, final int size) {
+		UUID uuid = UUID.nameUUIDFromBytes(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+		return new File(STORE_DIR, uuid + "_" + size + SUFFIX);
+	}
+
+	/**
+	 * Read a thumbnail from the store.
+	 *
+	 * @param storeFile
+	 *            The thumbnail file.
+	 * @param path
+	 *            The path of the image file.
+	 * @param lastModified
+	 *            The modification date of the image file.
+	 * @param size
+	 *            The thumbnail size.
+	 * @return The thumbnail, or null if there is no valid thumbnail.
+	 */
+	private static Image readThumbnail(final File storeFile, final String path, final long lastModified,
+			final int size) {
+		if (!storeFile.exists()) {
+			return null;
+		}
+
+		BufferedImage bufferedImage = null;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+			if (isValidHeader(input, path, lastModified, size)) {
+				bufferedImage = ImageIO.read(input);
+			}
+		}
+		catch (IOException e) {
+			Logger.warning("Failed to read thumbnail " + storeFile.getAbsolutePath() + ": " + e);
+		}
+
+		if (bufferedImage == null) {
+			// Outdated or corrupt - will be stored again.
+			if (!storeFile.delete()) {
+				Logger.warning("Failed to delete thumbnail " + storeFile.getAbsolutePath());
+			}
+			return null;
+		}
+		return ImageUtil.createImage(bufferedImage);
+	}
+
+	/**
+	 * Read the header of a thumbnail file and check it against the image file.
+	 *
+	 * @param input
+	 *            The stream of the thumbnail file.
+	 * @param path
+	 *            The path of the image file.
+	 * @param lastModified
+	 *            The modification date of the image file.
+	 * @param size
+	 *            The thumbnail size.
+	 * @return true if the header matches.
+	 * @throws IOException
+	 *             thrown if the header cannot be read.
+	 */
+	private static boolean isValidHeader(final DataInputStream input, final String path, final long lastModified,
+			final int size) throws IOException {
+		if (input.readInt() != MAGIC) {
+			return false;
+		}
+		String storedPath = input.readUTF();
+		long storedLastModified = input.readLong();
+		int storedSize = input.readInt();
+		return path.equals(storedPath) && lastModified == storedLastModified && size == storedSize;
+	}
+
+	/**
+	 * Store a thumbnail in background. The file is written under a temporary name and renamed afterwards, so that
+	 * incomplete files are never read.
+	 *
+	 * @param storeFile
+	 *            The thumbnail file.
+	 * @param path
+	 *            The path of the image file.
+	 * @param lastModified
+	 *            The modification date of the image file when the thumbnail was loaded.
+	 * @param size
+	 *            The thumbnail size.
+	 * @param image
+	 *            The thumbnail.
+	 */
+	private static void storeInBackground(final File storeFile, final String path, final long lastModified,
+			final int size, final Image image) {
+		WRITE_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (!STORE_DIR.isDirectory() && !STORE_DIR.mkdirs()) {
+					Logger.warning("Failed to create thumbnail directory " + STORE_DIR.getAbsolutePath());
+					return;
+				}
+
+				File tempFile = new File(STORE_DIR, storeFile.getName() + ".tmp");
+				try {
+					try (DataOutputStream output =
+							new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+						output.writeInt(MAGIC);
+						output.writeUTF(path);
+						output.writeLong(lastModified);
+						output.writeInt(size);
+						writeJpeg(ImageUtil.toBufferedImage(image), output);
+					}
+					Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				catch (IOException e) {
+					Logger.warning("Failed to store thumbnail " + storeFile.getAbsolutePath() + ": " + e);
+					tempFile.delete();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Encode an image as JPEG.
+	 *
+	 * @param bufferedImage
+	 *            The image.
+	 * @param output
+	 *            The target stream.
+	 * @throws IOException
+	 *             thrown if the image cannot be written.
+	 */
+	private static void writeJpeg(final BufferedImage bufferedImage, final DataOutputStream output)
+			throws IOException {
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(JPEG_QUALITY);
+
+		try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+			writer.setOutput(imageOutput);
+			writer.write(null, new IIOImage(bufferedImage, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+	}
+
+	/**
+	 * Once per application run, remove thumbnails in background whose image file has been changed or deleted, or
+	 * which have a thumbnail size different from the current one.
+	 *
+	 * @param size
+	 *            The current thumbnail size.
+	 */
+	private static synchronized void cleanUpInBackground(final int size) {
+		if (mIsCleanedUp) {
+			return;
+		}
+		mIsCleanedUp = true;
+
+		WRITE_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				File[] storeFiles = STORE_DIR.listFiles();
+				if (storeFiles == null) {
+					return;
+				}
+				for (File storeFile : storeFiles) {
+					if (!isUpToDate(storeFile, size)) {
+						storeFile.delete();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Check if a thumbnail file still belongs to an unchanged image file and has the current thumbnail size.
+	 *
+	 * @param storeFile
+	 *            The thumbnail file.
+	 * @param size
+	 *            The current thumbnail size.
+	 * @return true if the thumbnail has the current size and the image file exists and has not been changed.
+	 */
+	private static boolean isUpToDate(final File storeFile, final int size) {
+		if (!storeFile.getName().endsWith("_" + size + SUFFIX)) {
+			return false;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+			if (input.readInt() != MAGIC) {
+				return false;
+			}
+			File file = new File(input.readUTF());
+			return file.exists() && file.lastModified() == input.readLong() && input.readInt() == size;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * This package contains platform independent classes for handling image files.
+ */
+package de.jeisfeld.augendiagnosecore.util.imagefile;
@@ -0,0 +1,165 @@
+package de.jeisfeld.augendiagnosecore.util.imagefile;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.jeisfeld.augendiagnosecore.util.imagefile.PupilAndIrisDetectorCore.ArgbRaster;
+
+/**
+ * Tests of the detection of pupil and iris on synthetic eye images, running headless via ArgbRaster.
+ */
+public class PupilAndIrisDetectorCoreTest {
+	/**
+	 * The color of the sclera.
+	 */
+	private static final int SCLERA_COLOR = 0xFFE8E4E0;
+	/**
+	 * The color of the iris.
+	 */
+	private static final int IRIS_COLOR = 0xFF5A7090;
+	/**
+	 * The color of the pupil.
+	 */
+	private static final int PUPIL_COLOR = 0xFF141414;
+	/**
+	 * The maximum noise added to each color component.
+	 */
+	private static final int NOISE = 12;
+	/**
+	 * The allowed deviation of positions and radii, relative to the image size.
+	 */
+	private static final float TOLERANCE = 0.01f;
+
+	/**
+	 * Test detection of pupil and iris in a synthetic 4:3 eye photo.
+	 */
+	@Test
+	public void testDetect() {
+		ArgbRaster image = createEyeImage(1200, 900, 560, 470, 70, 250); // MAGIC_NUMBER
+		PupilAndIrisDetectorCore detector = new PupilAndIrisDetectorCore(image, 1, false);
+		detector.detect();
+
+		assertEquals(560 / 1200f, detector.getPupilXCenter(), TOLERANCE); // MAGIC_NUMBER
+		assertEquals(470 / 900f, detector.getPupilYCenter(), TOLERANCE); // MAGIC_NUMBER
+		assertEquals(70 / 1200f, detector.getPupilRadius(), TOLERANCE); // MAGIC_NUMBER
+		assertEquals(560 / 1200f, detector.getIrisXCenter(), TOLERANCE); // MAGIC_NUMBER
+		assertEquals(470 / 900f, detector.getIrisYCenter(), TOLERANCE); // MAGIC_NUMBER
+		assertEquals(250 / 1200f, detector.getIrisRadius(), TOLERANCE); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Test that the initial search also considers the last rows of the central part of an image whose height is not
+	 * divisible by 4.
+	 */
+	@Test
+	public void testInitialSearchCoversCentralRows() {
+		ArgbRaster image = createEyeImage(100, 75, 50, 56, 6, 16); // MAGIC_NUMBER
+		PupilAndIrisDetectorCore detector = new PupilAndIrisDetectorCore(image, 1, false);
+		detector.determineInitialParameterValues();
+
+		assertEquals(50 / 100f, detector.getPupilXCenter(), TOLERANCE); // MAGIC_NUMBER
+		assertEquals(56 / 75f, detector.getPupilYCenter(), 0); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Test that the result does not depend on the parallelism.
+	 */
+	@Test
+	public void testParallelismGivesIdenticalResults() {
+		ArgbRaster image = createEyeImage(1000, 750, 530, 360, 60, 210); // MAGIC_NUMBER
+		PupilAndIrisDetectorCore sequentialDetector = new PupilAndIrisDetectorCore(image, 1, false);
+		sequentialDetector.detect();
+
+		for (int parallelism : new int[] {2, 3, 0}) { // MAGIC_NUMBER
+			PupilAndIrisDetectorCore parallelDetector = new PupilAndIrisDetectorCore(image, parallelism, false);
+			parallelDetector.detect();
+			assertSameResult(sequentialDetector, parallelDetector);
+		}
+	}
+
+	/**
+	 * Test that fast statistics give the same result as exact statistics, sequentially and in parallel.
+	 */
+	@Test
+	public void testFastStatisticsGiveIdenticalResults() {
+		ArgbRaster image = createEyeImage(1000, 750, 470, 390, 80, 230); // MAGIC_NUMBER
+		PupilAndIrisDetectorCore exactDetector = new PupilAndIrisDetectorCore(image, 1, false);
+		exactDetector.detect();
+
+		for (int parallelism : new int[] {1, 4}) { // MAGIC_NUMBER
+			PupilAndIrisDetectorCore fastDetector = new PupilAndIrisDetectorCore(image, parallelism, true);
+			fastDetector.detect();
+			assertSameResult(exactDetector, fastDetector);
+		}
+	}
+
+	/**
+	 * Assert that two detectors have the same result.
+	 *
+	 * @param expected The detector with the expected result.
+	 * @param actual The detector to be checked.
+	 */
+	private static void assertSameResult(final PupilAndIrisDetectorCore expected, final PupilAndIrisDetectorCore actual) {
+		assertEquals(expected.getPupilXCenter(), actual.getPupilXCenter(), 0);
+		assertEquals(expected.getPupilYCenter(), actual.getPupilYCenter(), 0);
+		assertEquals(expected.getPupilRadius(), actual.getPupilRadius(), 0);
+		assertEquals(expected.getIrisXCenter(), actual.getIrisXCenter(), 0);
+		assertEquals(expected.getIrisYCenter(), actual.getIrisYCenter(), 0);
+		assertEquals(expected.getIrisRadius(), actual.getIrisRadius(), 0);
+	}
+
+	/**
+	 * Create a synthetic eye image: a dark pupil inside a bluish iris on a light sclera, with some noise. The image is
+	 * always identical for the same parameters.
+	 *
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param xCenter The x coordinate of the center of pupil and iris.
+	 * @param yCenter The y coordinate of the center of pupil and iris.
+	 * @param pupilRadius The pupil radius.
+	 * @param irisRadius The iris radius.
+	 * @return The image.
+	 */
+	private static ArgbRaster createEyeImage(final int width, final int height, final int xCenter, final int yCenter,
+			final int pupilRadius, final int irisRadius) {
+		Random random = new Random(width * height + xCenter);
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int distance2 = (x - xCenter) * (x - xCenter) + (y - yCenter) * (y - yCenter);
+				int color;
+				if (distance2 <= pupilRadius * pupilRadius) {
+					color = PUPIL_COLOR;
+				}
+				else if (distance2 <= irisRadius * irisRadius) {
+					color = IRIS_COLOR;
+				}
+				else {
+					color = SCLERA_COLOR;
+				}
+				pixels[y * width + x] = addNoise(color, random);
+			}
+		}
+		return new ArgbRaster(width, height, pixels);
+	}
+
+	/**
+	 * Add noise to the color components of a color.
+	 *
+	 * @param color The color (in ARGB format).
+	 * @param random The random number generator.
+	 * @return The color with noise.
+	 */
+	private static int addNoise(final int color, final Random random) {
+		int result = color & 0xFF000000; // MAGIC_NUMBER
+		for (int shift = 0; shift <= 16; shift += 8) { // MAGIC_NUMBER
+			int component = (color >> shift) & 0xFF; // MAGIC_NUMBER
+			component = Math.max(0, Math.min(0xFF, component + random.nextInt(2 * NOISE + 1) - NOISE)); // MAGIC_NUMBER
+			result |= component << shift;
+		}
+		return result;
+	}
+}
@@ -70,6 +70,7 @@ import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto.RightLeft;
 import de.jeisfeld.augendiagnoselib.util.imagefile.FileUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.ImageUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadata;
+import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadataUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.JpegSynchronizationUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.MediaStoreUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.PupilAndIrisDetector;
@@ -1434,13 +1435,26 @@ public class CameraActivity extends StandardActivity {
 		protected File doInBackground(final File... imageFiles) {
 			File imageFile = imageFiles[0];
 
+			// Store the metadata already in memory, so that the file needs to be written only once.
+			byte[] imageData = mImageData;
+			boolean isMetadataStored = mMetadata == null;
+			if (mMetadata != null) {
+				try {
+					imageData = JpegMetadataUtil.changeMetadata(mImageData, mMetadata);
+					isMetadataStored = true;
+				}
+				catch (Exception e) {
+					Log.w(Application.TAG, "Failed to store metadata in memory - storing it in file", e);
+				}
+			}
+
 			try {
 				FileOutputStream fos = new FileOutputStream(imageFile.getAbsolutePath());
 
-				fos.write(mImageData);
+				fos.write(imageData);
 				fos.close();
 
-				if (mMetadata != null) {
+				if (!isMetadataStored) {
 					JpegSynchronizationUtil.storeJpegMetadata(imageFile.getAbsolutePath(), mMetadata);
 				}
 			}
@@ -181,6 +181,7 @@ public class SettingsFragment extends PreferenceFragment {
 			bindPreferenceSummaryToValue(R.string.key_max_bitmap_size);
 			bindPreferenceSummaryToValue(R.string.key_store_option);
 			bindPreferenceSummaryToValue(R.string.key_full_resolution);
+			bindPreferenceSummaryToValue(R.string.key_iris_detection_resolution);
 		}
 		else if (mType.equals(getActivity().getString(R.string.key_dummy_screen_camera_settings))) {
 			addPreferencesFromResource(R.xml.prefs_camera);
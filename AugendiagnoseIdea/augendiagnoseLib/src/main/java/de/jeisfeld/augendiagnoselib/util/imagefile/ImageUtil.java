@@ -205,7 +205,7 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Return a bitmap of this photo.
+	 * Return a bitmap of this photo. If the photo cannot be decoded, a dummy bitmap is returned instead.
 	 *
 	 * @param path        The file path of the image.
 	 * @param maxSize     The maximum size of this bitmap. If bigger, it will be resized.
@@ -213,10 +213,31 @@ public final class ImageUtil {
 	 */
 	@Nullable
 	public static Bitmap getImageBitmap(@NonNull final String path, final int maxSize) {
+		Bitmap bitmap = decodeImageBitmap(path, maxSize);
+		if (bitmap == null && maxSize > 0) {
+			// cannot create bitmap - return dummy
+			Log.w(Application.TAG, "Cannot create bitmap from path " + path + " - return dummy bitmap");
+			return getDummyBitmap();
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Return a bitmap of this photo, or null if the photo cannot be decoded.
+	 *
+	 * @param path        The file path of the image.
+	 * @param maxSize     The maximum size of this bitmap. If bigger, it will be resized.
+	 * @return the bitmap.
+	 */
+	@Nullable
+	public static Bitmap decodeImageBitmap(@NonNull final String path, final int maxSize) {
 		Bitmap bitmap = null;
 
 		if (maxSize <= 0) {
 			bitmap = BitmapFactory.decodeFile(path);
+			if (bitmap == null) {
+				return null;
+			}
 		}
 		else {
 
@@ -241,9 +262,7 @@ public final class ImageUtil {
 					bitmap = BitmapFactory.decodeFile(path, options);
 
 					if (bitmap == null) {
-						// cannot create bitmap - return dummy
-						Log.w(Application.TAG, "Cannot create bitmap from path " + path + " - return dummy bitmap");
-						return getDummyBitmap();
+						return null;
 					}
 				}
 			}
@@ -27,6 +27,7 @@ import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
 import org.apache.commons.imaging.util.IoUtils;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -41,6 +42,10 @@ import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
  * Helper clase to retrieve and save metadata in a JPEG file.
  */
 public final class JpegMetadataUtil {
+	/**
+	 * The number of bytes reserved for growth of the EXIF data when changing metadata in memory.
+	 */
+	private static final int EXIF_RESERVE = 4096;
 
 	/**
 	 * Hide default constructor.
@@ -355,51 +360,7 @@ public final class JpegMetadataUtil {
 
 		OutputStream os = null;
 		try {
-			TiffOutputSet outputSet = null;
-
-			// note that metadata might be null if no metadata is found.
-			final IImageMetadata imageMetadata = Imaging.getMetadata(jpegImageFile);
-			final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-			if (jpegMetadata != null) {
-				// note that exif might be null if no Exif metadata is found.
-				final TiffImageMetadata exif = jpegMetadata.getExif();
-
-				if (exif != null) {
-					outputSet = exif.getOutputSet();
-				}
-			}
-
-			if (outputSet == null) {
-				outputSet = new TiffOutputSet();
-			}
-
-			final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
-			final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
-
-			if (metadata.getTitle() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
-
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
-			}
-
-			if (metadata.getComment() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
-				exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-				exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
-			}
-
-			if (metadata.getSubject() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
-			}
-
-			if (metadata.getOrientation() != null) {
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_ORIENTATION, metadata.getOrientation());
-			}
+			TiffOutputSet outputSet = getExifOutputSet(Imaging.getMetadata(jpegImageFile), metadata);
 
 			int retryCount = 0;
 			do {
@@ -455,38 +416,7 @@ public final class JpegMetadataUtil {
 
 			XmpHandler parser = new XmpHandler(xmpString);
 
-			if (changeExifAllowed()) {
-				// Change standard fields only if EXIF allowed
-				parser.setDcTitle(metadata.getTitle());
-				parser.setDcDescription(metadata.getDescription());
-				parser.setDcSubject(metadata.getSubject());
-				parser.setUserComment(metadata.getComment());
-				parser.setMicrosoftPerson(metadata.getPerson());
-			}
-
-			parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
-			parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
-			parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
-			parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
-			parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
-
-			parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
-			parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
-			parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
-			parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
-			parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
-			parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
-			parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
-			parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
-			parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
-			parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
-			parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
-			parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+			updateXmpHandler(parser, metadata, changeExifAllowed());
 
 			int retryCount = 0;
 			do {
@@ -510,6 +440,166 @@ public final class JpegMetadataUtil {
 		}
 	}
 
+	/**
+	 * Change metadata of JPEG data held in memory (EXIF and XMP as far as applicable). This allows to store the metadata
+	 * of a new photo before writing it, so that the file is written only once.
+	 *
+	 * @param jpegData the JPEG data.
+	 * @param metadata the new metadata.
+	 * @return the JPEG data with the new metadata.
+	 * @throws IOException  thrown in case of errors while reading or writing metadata.
+	 * @throws XMPException thrown in case of issues with XML handling.
+	 */
+	@NonNull
+	public static byte[] changeMetadata(@NonNull final byte[] jpegData, @NonNull final JpegMetadata metadata) throws IOException,
+			XMPException {
+		if (!changeJpegAllowed()) {
+			return jpegData;
+		}
+		return changeMetadata(jpegData, metadata, changeExifAllowed());
+	}
+
+	/**
+	 * Change metadata of JPEG data held in memory, independent of the settings.
+	 *
+	 * @param jpegData   the JPEG data.
+	 * @param metadata   the new metadata.
+	 * @param changeExif flag indicating if EXIF data and the standard XMP fields should be changed.
+	 * @return the JPEG data with the new metadata.
+	 * @throws IOException  thrown in case of errors while reading or writing metadata.
+	 * @throws XMPException thrown in case of issues with XML handling.
+	 */
+	@NonNull
+	static byte[] changeMetadata(@NonNull final byte[] jpegData, @NonNull final JpegMetadata metadata, final boolean changeExif)
+			throws IOException, XMPException {
+		XmpHandler parser = new XmpHandler(JpegXmpSplicer.getXmpString(jpegData));
+		updateXmpHandler(parser, metadata, changeExif);
+		byte[] result = JpegXmpSplicer.setXmpString(jpegData, parser.getXmpString());
+
+		if (changeExif) {
+			try {
+				TiffOutputSet outputSet = getExifOutputSet(Imaging.getMetadata(result), metadata);
+				ByteArrayOutputStream os = new ByteArrayOutputStream(result.length + EXIF_RESERVE);
+				try {
+					new ExifRewriter().updateExifMetadataLossless(result, os, outputSet);
+				}
+				catch (Exception e) {
+					Log.w(Application.TAG, "Error storing EXIF data lossless - try lossy approach");
+					os.reset();
+					new ExifRewriter().updateExifMetadataLossy(result, os, outputSet);
+				}
+				result = os.toByteArray();
+			}
+			catch (Exception e) {
+				throw new ExifStorageException(e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the EXIF output set for storing metadata.
+	 *
+	 * @param imageMetadata the existing metadata of the image. May be null.
+	 * @param metadata      the new metadata.
+	 * @return the output set.
+	 * @throws ImageWriteException thrown if the metadata cannot be written.
+	 */
+	@NonNull
+	private static TiffOutputSet getExifOutputSet(@Nullable final IImageMetadata imageMetadata, @NonNull final JpegMetadata metadata)
+			throws ImageWriteException {
+		TiffOutputSet outputSet = null;
+
+		// note that metadata might be null if no metadata is found.
+		final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
+		if (jpegMetadata != null) {
+			// note that exif might be null if no Exif metadata is found.
+			final TiffImageMetadata exif = jpegMetadata.getExif();
+
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
+			}
+		}
+
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
+
+		final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+
+		if (metadata.getTitle() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
+
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
+		}
+
+		if (metadata.getComment() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+		}
+
+		if (metadata.getSubject() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+		}
+
+		if (metadata.getOrientation() != null) {
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_ORIENTATION, metadata.getOrientation());
+		}
+
+		return outputSet;
+	}
+
+	/**
+	 * Update an XMP handler with the metadata to be stored.
+	 *
+	 * @param parser     the XMP handler.
+	 * @param metadata   the new metadata.
+	 * @param changeExif flag indicating if the standard fields should be changed.
+	 * @throws XMPException thrown in case of issues with XML handling.
+	 */
+	private static void updateXmpHandler(@NonNull final XmpHandler parser, @NonNull final JpegMetadata metadata, final boolean changeExif)
+			throws XMPException {
+		if (changeExif) {
+			// Change standard fields only if EXIF allowed
+			parser.setDcTitle(metadata.getTitle());
+			parser.setDcDescription(metadata.getDescription());
+			parser.setDcSubject(metadata.getSubject());
+			parser.setUserComment(metadata.getComment());
+			parser.setMicrosoftPerson(metadata.getPerson());
+		}
+
+		parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
+		parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
+		parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
+
+		parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
+		parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
+		parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
+		parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
+		parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
+		parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
+		parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
+		parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
+		parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
+		parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
+		parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
+		parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+	}
+
 	/**
 	 * Verify if the temporary file already exists. If yes, delete it.
 	 *
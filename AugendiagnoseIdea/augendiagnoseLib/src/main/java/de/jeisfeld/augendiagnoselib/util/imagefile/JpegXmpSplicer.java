@@ -0,0 +1,199 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Utility class to read and replace the XMP packet of JPEG data held in memory. This allows to store metadata in a
+ * photo before it is written to the file system, so that the file is written only once.
+ *
+ * <p>The XMP packet is stored in an APP1 segment starting with the XMP namespace. The splicer copies all other segments
+ * unchanged and places the new XMP segment behind the leading APP0 (JFIF) and APP1 (EXIF) segments.
+ */
+public final class JpegXmpSplicer {
+	// JAVADOC:OFF
+	private static final int MARKER_PREFIX = 0xFF;
+	private static final int MARKER_SOI = 0xD8;
+	private static final int MARKER_EOI = 0xD9;
+	private static final int MARKER_SOS = 0xDA;
+	private static final int MARKER_APP0 = 0xE0;
+	private static final int MARKER_APP1 = 0xE1;
+	private static final int MARKER_TEM = 0x01;
+	private static final int MARKER_RST0 = 0xD0;
+	private static final int MARKER_RST7 = 0xD7;
+	// JAVADOC:ON
+
+	/**
+	 * The charset of the XMP packet.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The identifier at the start of an XMP APP1 segment.
+	 */
+	private static final byte[] XMP_IDENTIFIER = "http://ns.adobe.com/xap/1.0/\0".getBytes(Charset.forName("US-ASCII"));
+
+	/**
+	 * The maximum size of a segment, including the length bytes.
+	 */
+	private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private JpegXmpSplicer() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the XMP packet of JPEG data.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @return The XMP packet, or null if there is none.
+	 * @throws IOException thrown if the data is no valid JPEG or ends before the image data.
+	 */
+	@Nullable
+	public static String getXmpString(@NonNull final byte[] jpegData) throws IOException {
+		int position = checkSoi(jpegData);
+		while (position < jpegData.length) {
+			int marker = getMarker(jpegData, position);
+			int end = getSegmentEnd(jpegData, position, marker);
+			if (marker == MARKER_SOS || marker == MARKER_EOI) {
+				return null;
+			}
+			if (isXmpSegment(jpegData, position, marker)) {
+				int start = position + 4 + XMP_IDENTIFIER.length; // MAGIC_NUMBER
+				return new String(jpegData, start, end - start, UTF8);
+			}
+			position = end;
+		}
+		throw new IOException("JPEG data contains no image.");
+	}
+
+	/**
+	 * Replace the XMP packet of JPEG data. Existing XMP segments are removed.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @param xmpString The new XMP packet.
+	 * @return The JPEG data with the new XMP packet.
+	 * @throws IOException thrown if the data is no valid JPEG or if the XMP packet does not fit into one segment.
+	 */
+	@NonNull
+	public static byte[] setXmpString(@NonNull final byte[] jpegData, @NonNull final String xmpString) throws IOException {
+		byte[] xmpBytes = xmpString.getBytes(UTF8);
+		int segmentLength = 2 + XMP_IDENTIFIER.length + xmpBytes.length;
+		if (segmentLength > MAX_SEGMENT_LENGTH) {
+			throw new IOException("XMP packet of " + xmpBytes.length + " bytes does not fit into one JPEG segment.");
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream(jpegData.length + segmentLength + 2);
+		int position = checkSoi(jpegData);
+		output.write(jpegData, 0, position);
+
+		boolean isXmpWritten = false;
+		while (position < jpegData.length) {
+			int marker = getMarker(jpegData, position);
+			int end = marker == MARKER_SOS || marker == MARKER_EOI ? jpegData.length : getSegmentEnd(jpegData, position, marker);
+
+			if (!isXmpWritten && marker != MARKER_APP0 && !(marker == MARKER_APP1 && !isXmpSegment(jpegData, position, marker))) {
+				// Place the XMP segment behind the JFIF and EXIF segments.
+				output.write(MARKER_PREFIX);
+				output.write(MARKER_APP1);
+				output.write(segmentLength >> 8); // MAGIC_NUMBER
+				output.write(segmentLength & 0xFF); // MAGIC_NUMBER
+				output.write(XMP_IDENTIFIER, 0, XMP_IDENTIFIER.length);
+				output.write(xmpBytes, 0, xmpBytes.length);
+				isXmpWritten = true;
+			}
+			if (!isXmpSegment(jpegData, position, marker)) {
+				output.write(jpegData, position, end - position);
+			}
+			position = end;
+		}
+
+		if (!isXmpWritten) {
+			throw new IOException("JPEG data contains no image.");
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Check that the data starts with the JPEG start of image marker.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @return The position of the first segment.
+	 * @throws IOException thrown if the data is no JPEG.
+	 */
+	private static int checkSoi(@NonNull final byte[] jpegData) throws IOException {
+		if (jpegData.length < 2 || (jpegData[0] & 0xFF) != MARKER_PREFIX || (jpegData[1] & 0xFF) != MARKER_SOI) { // MAGIC_NUMBER
+			throw new IOException("Data is no JPEG.");
+		}
+		return 2;
+	}
+
+	/**
+	 * Get the marker of the segment at a position.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @param position The start of the segment.
+	 * @return The marker.
+	 * @throws IOException thrown if there is no marker at this position.
+	 */
+	private static int getMarker(@NonNull final byte[] jpegData, final int position) throws IOException {
+		if (position + 1 >= jpegData.length || (jpegData[position] & 0xFF) != MARKER_PREFIX) { // MAGIC_NUMBER
+			throw new IOException("Missing JPEG marker at position " + position + ".");
+		}
+		return jpegData[position + 1] & 0xFF; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Get the end of the segment at a position, i.e. the position of the next marker. Fill bytes in front of the next
+	 * marker are considered part of the segment.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @param position The start of the segment.
+	 * @param marker The marker of the segment.
+	 * @return The end of the segment.
+	 * @throws IOException thrown if the segment exceeds the data.
+	 */
+	private static int getSegmentEnd(@NonNull final byte[] jpegData, final int position, final int marker) throws IOException {
+		int end;
+		if (marker == MARKER_PREFIX) {
+			// fill byte
+			end = position + 1;
+		}
+		else if (marker == MARKER_TEM || marker == MARKER_EOI || marker >= MARKER_RST0 && marker <= MARKER_RST7) {
+			// marker without content
+			end = position + 2;
+		}
+		else {
+			if (position + 3 >= jpegData.length) { // MAGIC_NUMBER
+				throw new IOException("Truncated JPEG segment at position " + position + ".");
+			}
+			end = position + 2 + ((jpegData[position + 2] & 0xFF) << 8 | jpegData[position + 3] & 0xFF); // MAGIC_NUMBER
+		}
+		if (end > jpegData.length) {
+			throw new IOException("Truncated JPEG segment at position " + position + ".");
+		}
+		return end;
+	}
+
+	/**
+	 * Check if the segment at a position is an XMP segment.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @param position The start of the segment.
+	 * @param marker The marker of the segment.
+	 * @return true if the segment is an XMP segment.
+	 */
+	private static boolean isXmpSegment(@NonNull final byte[] jpegData, final int position, final int marker) {
+		int start = position + 4; // MAGIC_NUMBER
+		return marker == MARKER_APP1 && start + XMP_IDENTIFIER.length <= jpegData.length
+				&& Arrays.equals(Arrays.copyOfRange(jpegData, start, start + XMP_IDENTIFIER.length), XMP_IDENTIFIER);
+	}
+}
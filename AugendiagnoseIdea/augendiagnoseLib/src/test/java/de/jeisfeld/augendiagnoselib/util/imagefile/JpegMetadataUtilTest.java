@@ -0,0 +1,86 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.junit.Test;
+
+/**
+ * Tests of storing metadata in JPEG data held in memory.
+ */
+public class JpegMetadataUtilTest {
+	/**
+	 * Test that metadata stored in JPEG data can be read again via commons-imaging.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testChangeMetadata() throws Exception {
+		byte[] jpegData = JpegXmpSplicerTest.addExif(JpegXmpSplicerTest.createJpeg());
+		JpegMetadata metadata = createMetadata("Title 1", 0.25f); // MAGIC_NUMBER
+
+		byte[] result = JpegMetadataUtil.changeMetadata(jpegData, metadata, true);
+		assertMetadata(result, "Title 1", "0.25");
+
+		// Change once more, so that existing XMP and EXIF data are updated.
+		byte[] result2 = JpegMetadataUtil.changeMetadata(result, createMetadata("Title 2", 0.5f), true); // MAGIC_NUMBER
+		assertMetadata(result2, "Title 2", "0.5");
+	}
+
+	/**
+	 * Test that only the custom XMP data are stored if EXIF changes are not allowed.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testChangeMetadataWithoutExif() throws Exception {
+		byte[] jpegData = JpegXmpSplicerTest.addExif(JpegXmpSplicerTest.createJpeg());
+
+		byte[] result = JpegMetadataUtil.changeMetadata(jpegData, createMetadata("Title 1", 0.25f), false); // MAGIC_NUMBER
+
+		XmpHandler parser = new XmpHandler(Imaging.getXmpXml(result));
+		assertEquals("Title 1", parser.getJeItem(XmpHandler.ITEM_TITLE));
+		assertEquals(null, parser.getDcTitle());
+		assertEquals("EXIF description", JpegXmpSplicerTest.getExifDescription(result));
+	}
+
+	/**
+	 * Create metadata for the tests.
+	 *
+	 * @param title The title.
+	 * @param xCenter The x center.
+	 * @return The metadata.
+	 */
+	private static JpegMetadata createMetadata(final String title, final float xCenter) {
+		JpegMetadata metadata = new JpegMetadata();
+		metadata.setTitle(title);
+		metadata.setComment("Comment");
+		metadata.setXCenter(xCenter);
+		metadata.setFlags(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY);
+		return metadata;
+	}
+
+	/**
+	 * Assert that JPEG data contain the metadata created by createMetadata in XMP and EXIF.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @param title The expected title.
+	 * @param xCenter The expected x center.
+	 * @throws Exception thrown in case of errors.
+	 */
+	private static void assertMetadata(final byte[] jpegData, final String title, final String xCenter) throws Exception {
+		XmpHandler parser = new XmpHandler(Imaging.getXmpXml(jpegData));
+		assertEquals(title, parser.getJeItem(XmpHandler.ITEM_TITLE));
+		assertEquals(title, parser.getDcTitle());
+		assertEquals("Comment", parser.getJeItem(XmpHandler.ITEM_COMMENT));
+		assertEquals(xCenter, parser.getJeItem(XmpHandler.ITEM_X_CENTER));
+		assertEquals(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY, parser.getJeInt(XmpHandler.ITEM_FLAGS));
+
+		JpegImageMetadata imageMetadata = (JpegImageMetadata) Imaging.getMetadata(jpegData);
+		assertEquals(title, imageMetadata.findEXIFValue(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION).getStringValue());
+		assertEquals("Comment", imageMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_USER_COMMENT).getValue());
+	}
+}
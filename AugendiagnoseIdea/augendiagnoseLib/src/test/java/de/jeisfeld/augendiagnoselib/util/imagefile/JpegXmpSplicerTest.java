@@ -0,0 +1,349 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.junit.Test;
+
+/**
+ * Tests of reading and replacing the XMP packet of JPEG data.
+ */
+public class JpegXmpSplicerTest {
+	/**
+	 * The identifier at the start of an XMP APP1 segment.
+	 */
+	private static final byte[] XMP_IDENTIFIER = "http://ns.adobe.com/xap/1.0/\0".getBytes(Charset.forName("US-ASCII"));
+
+	/**
+	 * A first XMP packet.
+	 */
+	private static final String XMP_1 = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"><rdf:RDF "
+			+ "xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"><rdf:Description rdf:about=\"\" "
+			+ "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" dc:format=\"image/jpeg\"/></rdf:RDF></x:xmpmeta>";
+
+	/**
+	 * A second XMP packet, containing non-ASCII characters.
+	 */
+	private static final String XMP_2 = "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\"><rdf:RDF "
+			+ "xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"><rdf:Description rdf:about=\"\" "
+			+ "xmlns:je=\"http://jeisfeld.de/\" je:person=\"Jörg Müller\"/></rdf:RDF></x:xmpmeta>";
+
+	/**
+	 * The image description stored in the EXIF data of test images.
+	 */
+	private static final String EXIF_DESCRIPTION = "EXIF description";
+
+	/**
+	 * Test that a packet set in JPEG data without XMP can be read again, and that it is placed behind the APP0 segment.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testSetAndGetXmpString() throws Exception {
+		byte[] jpegData = createJpeg();
+		assertNull(JpegXmpSplicer.getXmpString(jpegData));
+
+		byte[] result = JpegXmpSplicer.setXmpString(jpegData, XMP_1);
+		assertEquals(XMP_1, JpegXmpSplicer.getXmpString(result));
+		assertEquals(XMP_1, Imaging.getXmpXml(result));
+		assertEquals(1, countXmpSegments(result));
+		assertEquals(0xE0, result[3] & 0xFF); // MAGIC_NUMBER
+		assertEquals(0xE1, result[getSegmentLength(result, 2) + 3] & 0xFF); // MAGIC_NUMBER
+		assertImageUnchanged(jpegData, result);
+	}
+
+	/**
+	 * Test that an existing packet is replaced, so that there is only one XMP segment.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testReplaceXmpString() throws Exception {
+		byte[] jpegData = createJpeg();
+		byte[] firstResult = JpegXmpSplicer.setXmpString(jpegData, XMP_1);
+		byte[] result = JpegXmpSplicer.setXmpString(firstResult, XMP_2);
+
+		assertEquals(XMP_2, JpegXmpSplicer.getXmpString(result));
+		assertEquals(1, countXmpSegments(result));
+		assertEquals(jpegData.length + 4 + XMP_IDENTIFIER.length + XMP_2.getBytes("UTF-8").length, result.length); // MAGIC_NUMBER
+		assertImageUnchanged(jpegData, result);
+	}
+
+	/**
+	 * Test that a packet placed in front of the EXIF segment is replaced, and that the EXIF data are kept.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testReplaceXmpStringBeforeExif() throws Exception {
+		byte[] jpegData = addExif(createJpeg());
+		byte[] xmpSegment = getXmpSegment(JpegXmpSplicer.setXmpString(createJpeg(), XMP_1));
+		byte[] xmpBeforeExif = insert(jpegData, 2, xmpSegment);
+		assertEquals(XMP_1, JpegXmpSplicer.getXmpString(xmpBeforeExif));
+
+		byte[] result = JpegXmpSplicer.setXmpString(xmpBeforeExif, XMP_2);
+		assertEquals(XMP_2, JpegXmpSplicer.getXmpString(result));
+		assertEquals(1, countXmpSegments(result));
+		assertEquals(EXIF_DESCRIPTION, getExifDescription(result));
+		assertImageUnchanged(jpegData, result);
+	}
+
+	/**
+	 * Test that a packet is stored in JPEG data without APP0 segment.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testSetXmpStringWithoutApp0() throws Exception {
+		byte[] jpegData = createJpeg();
+		byte[] withoutApp0 = remove(jpegData, 2, getSegmentLength(jpegData, 2));
+		assertEquals(0xDB, withoutApp0[3] & 0xFF); // MAGIC_NUMBER
+
+		byte[] result = JpegXmpSplicer.setXmpString(withoutApp0, XMP_1);
+		assertEquals(XMP_1, JpegXmpSplicer.getXmpString(result));
+		assertEquals(0xE1, result[3] & 0xFF); // MAGIC_NUMBER
+		assertImageUnchanged(jpegData, result);
+	}
+
+	/**
+	 * Test that fill bytes in front of a marker are skipped and kept.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testFillBytes() throws Exception {
+		byte[] jpegData = createJpeg();
+		byte[] withFillBytes = insert(jpegData, 2 + getSegmentLength(jpegData, 2), new byte[] {(byte) 0xFF, (byte) 0xFF}); // MAGIC_NUMBER
+		assertNull(JpegXmpSplicer.getXmpString(withFillBytes));
+
+		byte[] result = JpegXmpSplicer.setXmpString(withFillBytes, XMP_1);
+		assertEquals(XMP_1, JpegXmpSplicer.getXmpString(result));
+		assertEquals(withFillBytes.length + 4 + XMP_IDENTIFIER.length + XMP_1.length(), result.length); // MAGIC_NUMBER
+		assertImageUnchanged(jpegData, result);
+	}
+
+	/**
+	 * Test that a packet exceeding one segment is rejected.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test(expected = IOException.class)
+	public void testPacketTooLarge() throws Exception {
+		char[] padding = new char[0x10000]; // MAGIC_NUMBER
+		Arrays.fill(padding, ' ');
+		JpegXmpSplicer.setXmpString(createJpeg(), XMP_1 + new String(padding));
+	}
+
+	/**
+	 * Test that data which is no JPEG is rejected.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testNoJpeg() throws Exception {
+		byte[] data = "no JPEG".getBytes("US-ASCII");
+		assertIOException(data);
+		assertIOException(new byte[0]);
+	}
+
+	/**
+	 * Test that truncated JPEG data is rejected.
+	 *
+	 * @throws Exception thrown in case of errors.
+	 */
+	@Test
+	public void testTruncatedJpeg() throws Exception {
+		byte[] jpegData = createJpeg();
+		assertIOException(Arrays.copyOf(jpegData, 10)); // MAGIC_NUMBER
+		assertIOException(Arrays.copyOf(jpegData, 3)); // MAGIC_NUMBER
+		assertIOException(Arrays.copyOf(jpegData, 2 + getSegmentLength(jpegData, 2)));
+	}
+
+	/**
+	 * Assert that reading and writing the XMP packet of the data fails with an IOException.
+	 *
+	 * @param data The data.
+	 */
+	private static void assertIOException(final byte[] data) {
+		try {
+			JpegXmpSplicer.getXmpString(data);
+			fail("Missing IOException when reading XMP");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		try {
+			JpegXmpSplicer.setXmpString(data, XMP_1);
+			fail("Missing IOException when writing XMP");
+		}
+		catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Assert that two JPEG data contain the same image.
+	 *
+	 * @param expected The expected JPEG data.
+	 * @param actual The JPEG data to be checked.
+	 * @throws IOException thrown if the data cannot be decoded.
+	 */
+	private static void assertImageUnchanged(final byte[] expected, final byte[] actual) throws IOException {
+		BufferedImage expectedImage = ImageIO.read(new ByteArrayInputStream(expected));
+		BufferedImage actualImage = ImageIO.read(new ByteArrayInputStream(actual));
+		assertNotNull(actualImage);
+		assertArrayEquals(expectedImage.getRGB(0, 0, expectedImage.getWidth(), expectedImage.getHeight(), null, 0, expectedImage.getWidth()),
+				actualImage.getRGB(0, 0, actualImage.getWidth(), actualImage.getHeight(), null, 0, actualImage.getWidth()));
+	}
+
+	/**
+	 * Create JPEG data of a small image, consisting of APP0, DQT, SOF, DHT and SOS segments.
+	 *
+	 * @return The JPEG data.
+	 * @throws IOException thrown in case of errors.
+	 */
+	static byte[] createJpeg() throws IOException {
+		BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB); // MAGIC_NUMBER
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, x * 4 << 16 | y * 5 << 8 | (x + y) * 2); // MAGIC_NUMBER
+			}
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Add an EXIF segment with an image description to JPEG data.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @return The JPEG data with EXIF segment.
+	 * @throws Exception thrown in case of errors.
+	 */
+	static byte[] addExif(final byte[] jpegData) throws Exception {
+		TiffOutputSet outputSet = new TiffOutputSet();
+		outputSet.getOrCreateRootDirectory().add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, EXIF_DESCRIPTION);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new ExifRewriter().updateExifMetadataLossless(jpegData, output, outputSet);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Get the image description from the EXIF data of JPEG data.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @return The image description.
+	 * @throws Exception thrown in case of errors.
+	 */
+	static String getExifDescription(final byte[] jpegData) throws Exception {
+		JpegImageMetadata metadata = (JpegImageMetadata) Imaging.getMetadata(jpegData);
+		return metadata.findEXIFValue(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION).getStringValue();
+	}
+
+	/**
+	 * Get the length of the segment at a position, including the marker.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @param position The start of the segment.
+	 * @return The length of the segment.
+	 */
+	private static int getSegmentLength(final byte[] jpegData, final int position) {
+		return 2 + ((jpegData[position + 2] & 0xFF) << 8 | jpegData[position + 3] & 0xFF); // MAGIC_NUMBER
+	}
+
+	/**
+	 * Get the first XMP segment of JPEG data.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @return The XMP segment, including the marker.
+	 */
+	private static byte[] getXmpSegment(final byte[] jpegData) {
+		int position = 2;
+		while (indexOf(jpegData, XMP_IDENTIFIER, position) != position + 4) { // MAGIC_NUMBER
+			position += getSegmentLength(jpegData, position);
+		}
+		return Arrays.copyOfRange(jpegData, position, position + getSegmentLength(jpegData, position));
+	}
+
+	/**
+	 * Count the XMP segments of JPEG data.
+	 *
+	 * @param jpegData The JPEG data.
+	 * @return The number of XMP segments.
+	 */
+	private static int countXmpSegments(final byte[] jpegData) {
+		int count = 0;
+		int position = indexOf(jpegData, XMP_IDENTIFIER, 0);
+		while (position >= 0) {
+			count++;
+			position = indexOf(jpegData, XMP_IDENTIFIER, position + 1);
+		}
+		return count;
+	}
+
+	/**
+	 * Find a byte sequence within data.
+	 *
+	 * @param data The data.
+	 * @param sequence The byte sequence.
+	 * @param start The position where to start the search.
+	 * @return The position of the byte sequence, or -1 if not found.
+	 */
+	private static int indexOf(final byte[] data, final byte[] sequence, final int start) {
+		for (int i = start; i <= data.length - sequence.length; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(data, i, i + sequence.length), sequence)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Insert bytes into data.
+	 *
+	 * @param data The data.
+	 * @param position The position where to insert.
+	 * @param insertion The bytes to be inserted.
+	 * @return The data with the inserted bytes.
+	 */
+	private static byte[] insert(final byte[] data, final int position, final byte[] insertion) {
+		byte[] result = new byte[data.length + insertion.length];
+		System.arraycopy(data, 0, result, 0, position);
+		System.arraycopy(insertion, 0, result, position, insertion.length);
+		System.arraycopy(data, position, result, position + insertion.length, data.length - position);
+		return result;
+	}
+
+	/**
+	 * Remove bytes from data.
+	 *
+	 * @param data The data.
+	 * @param position The position of the bytes to be removed.
+	 * @param length The number of bytes to be removed.
+	 * @return The data without these bytes.
+	 */
+	private static byte[] remove(final byte[] data, final int position, final int length) {
+		byte[] result = new byte[data.length - length];
+		System.arraycopy(data, 0, result, 0, position);
+		System.arraycopy(data, position + length, result, position, data.length - position - length);
+		return result;
+	}
+}